@@ -0,0 +1,51 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyHandlerBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    int payloadSize;
+
+    byte[] message;
+    Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        message = LoopbackServer.response(payloadSize);
+        file = Files.createTempFile("body-handler-benchmark", ".bin");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    <T> T read(HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        return new HttpResponse<>(new HttpInput(ByteBuffer.wrap(message), null), bodyHandler).body();
+    }
+
+    @Benchmark
+    public String ofString() throws IOException {
+        return read(HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Benchmark
+    public byte[] ofByteArray() throws IOException {
+        return read(HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Benchmark
+    public Path ofFile() throws IOException {
+        return read(HttpResponse.BodyHandlers.ofFile(file));
+    }
+}
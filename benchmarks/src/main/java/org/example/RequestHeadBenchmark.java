@@ -0,0 +1,57 @@
+package org.example;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestHeadBenchmark {
+    @Param({"0", "8", "32"})
+    int headerCount;
+
+    URI uri;
+    HttpRequest request;
+    HttpClient client;
+
+    @Setup
+    public void setUp() {
+        uri = URI.create("http://127.0.0.1:8080/benchmarks/request-head?query=value");
+        request = build();
+        client = HttpClient.newBuilder().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    HttpRequest build() {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        for (int i = 0; i < headerCount; i++) {
+            builder.header("X-Benchmark-" + i, "value-" + i);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public ByteBuffer cachedHead() {
+        return request.encodedHead();
+    }
+
+    @Benchmark
+    public ByteBuffer buildAndEncode() {
+        return build().encodedHead();
+    }
+
+    @Benchmark
+    public long sendRequest() throws IOException {
+        return client.sendRequest(request, OutputStream.nullOutputStream(), null);
+    }
+}
@@ -0,0 +1,34 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+    @Param({"0", "8", "32"})
+    int headerCount;
+
+    byte[] head;
+
+    @Setup
+    public void setUp() {
+        StringBuilder response = new StringBuilder("HTTP/1.1 200 OK\r\n");
+        for (int i = 0; i < headerCount; i++) {
+            response.append("X-Benchmark-").append(i).append(": value-").append(i).append("\r\n");
+        }
+        head = response.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public HttpResponse<Void> statusLineAndHeaders() throws IOException {
+        return new HttpResponse<>(new HttpInput(ByteBuffer.wrap(head), null));
+    }
+}
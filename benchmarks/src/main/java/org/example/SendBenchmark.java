@@ -0,0 +1,53 @@
+package org.example;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendBenchmark {
+    @Param({"0", "16384", "1048576"})
+    int payloadSize;
+
+    @Param({"0", "1"})
+    int latencyMillis;
+
+    LoopbackServer server;
+    HttpClient client;
+    HttpRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new LoopbackServer(payloadSize, Duration.ofMillis(latencyMillis));
+        client = HttpClient.newBuilder().build();
+        request = HttpRequest.newBuilder(server.uri("/benchmarks/send")).build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public String sendString() throws IOException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    @Benchmark
+    public byte[] sendByteArray() throws IOException {
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String sendConcurrently() throws IOException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
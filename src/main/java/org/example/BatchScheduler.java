@@ -0,0 +1,170 @@
+package org.example;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+class BatchScheduler {
+    private final int maxConcurrent;
+    private final int maxConcurrentPerHost;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Host> hosts = new HashMap<>();
+    private int running;
+    private long sequence;
+
+    BatchScheduler(int maxConcurrent, int maxConcurrentPerHost) {
+        if (maxConcurrent <= 0 || maxConcurrentPerHost <= 0) {
+            throw new IllegalArgumentException("Invalid batch concurrency " + maxConcurrent + ", " + maxConcurrentPerHost);
+        }
+
+        this.maxConcurrent = maxConcurrent;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+    }
+
+    <T> List<CompletableFuture<HttpResponse<T>>> submit(HttpClient client, Collection<HttpRequest> requests,
+                                                         HttpResponse.BodyHandler<T> bodyHandler) {
+        List<CompletableFuture<HttpResponse<T>>> futures = new ArrayList<>(requests.size());
+        lock.lock();
+        try {
+            for (HttpRequest request : requests) {
+                Task<T> task = new Task<>(client, Objects.requireNonNull(request), bodyHandler, sequence++);
+                hosts.computeIfAbsent(request.route(), route -> new Host()).pending.add(task);
+                futures.add(task.future);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        dispatch();
+        return futures;
+    }
+
+    int running() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        List<Task<?>> ready = new ArrayList<>();
+        lock.lock();
+        try {
+            while (running < maxConcurrent) {
+                Host host = nextHost();
+                if (host == null) {
+                    break;
+                }
+
+                Task<?> task = host.pending.poll();
+                if (task.future.isDone()) {
+                    continue;
+                }
+
+                host.running++;
+                running++;
+                ready.add(task);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Task<?> task : ready) {
+            start(task);
+        }
+    }
+
+    private Host nextHost() {
+        Host best = null;
+        for (Iterator<Host> iterator = hosts.values().iterator(); iterator.hasNext(); ) {
+            Host host = iterator.next();
+            if (host.pending.isEmpty()) {
+                if (host.running == 0) {
+                    iterator.remove();
+                }
+                continue;
+            }
+
+            if (host.running < maxConcurrentPerHost && (best == null || host.precedes(best))) {
+                best = host;
+            }
+        }
+        return best;
+    }
+
+    private <T> void start(Task<T> task) {
+        CompletableFuture<HttpResponse<T>> sent = task.client.sendAsync(task.request, task.bodyHandler);
+        task.future.whenComplete((response, t) -> {
+            if (task.future.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        sent.whenComplete((response, t) -> {
+            finish(task.request.route());
+            if (t != null) {
+                task.future.completeExceptionally(t);
+            } else {
+                task.future.complete(response);
+            }
+        });
+    }
+
+    private void finish(String route) {
+        lock.lock();
+        try {
+            running--;
+            Host host = hosts.get(route);
+            if (host != null) {
+                host.running--;
+            }
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    private static class Host {
+        final PriorityQueue<Task<?>> pending = new PriorityQueue<>();
+        int running;
+
+        boolean precedes(Host other) {
+            Task<?> head = pending.peek();
+            Task<?> otherHead = other.pending.peek();
+            if (head.priority != otherHead.priority) {
+                return head.priority > otherHead.priority;
+            }
+
+            if (running != other.running) {
+                return running < other.running;
+            }
+            return head.sequence < otherHead.sequence;
+        }
+    }
+
+    private static class Task<T> implements Comparable<Task<?>> {
+        final HttpClient client;
+        final HttpRequest request;
+        final HttpResponse.BodyHandler<T> bodyHandler;
+        final int priority;
+        final long sequence;
+        final CompletableFuture<HttpResponse<T>> future = new CompletableFuture<>();
+
+        Task(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, long sequence) {
+            this.client = client;
+            this.request = request;
+            this.bodyHandler = bodyHandler;
+            this.priority = request.priority();
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
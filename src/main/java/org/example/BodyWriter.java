@@ -0,0 +1,104 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+
+class BodyWriter implements Flow.Subscriber<ByteBuffer> {
+    static final int PREFETCH = 4;
+    private static final Object COMPLETE = new Object();
+
+    private final OutputStream out;
+    private final long contentLength;
+    private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+    private volatile Flow.Subscription subscription;
+
+    BodyWriter(OutputStream out, long contentLength) {
+        this.out = out;
+        this.contentLength = contentLength;
+    }
+
+    long write(Flow.Publisher<ByteBuffer> publisher) throws IOException {
+        publisher.subscribe(this);
+        long written = 0;
+        long sent = 0;
+        byte[] copy = null;
+        try {
+            for (Object signal = signals.take(); signal != COMPLETE; signal = signals.take()) {
+                if (signal instanceof Throwable failure) {
+                    throw new IOException("Request body publisher failed", failure);
+                }
+
+                ByteBuffer buffer = (ByteBuffer) signal;
+                int length = buffer.remaining();
+                written += length;
+                if (contentLength >= 0 && written > contentLength) {
+                    throw new IOException("Request body exceeds content length " + contentLength);
+                }
+
+                if (buffer.hasArray()) {
+                    sent += write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                } else {
+                    if (copy == null || copy.length < length) {
+                        copy = new byte[Math.max(length, HttpClient.CHUNK_SIZE)];
+                    }
+                    buffer.get(buffer.position(), copy, 0, length);
+                    sent += write(copy, 0, length);
+                }
+                subscription.request(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("Interrupted while writing request body");
+        } catch (IOException | RuntimeException e) {
+            cancel();
+            throw e;
+        }
+
+        if (contentLength < 0) {
+            out.write(HttpClient.LAST_CHUNK);
+            sent += HttpClient.LAST_CHUNK.length;
+        } else if (written < contentLength) {
+            throw new IOException("Request body shorter than content length " + contentLength);
+        }
+        return sent;
+    }
+
+    private int write(byte[] bytes, int offset, int length) throws IOException {
+        if (contentLength < 0) {
+            return HttpClient.writeChunk(out, bytes, offset, length);
+        }
+
+        out.write(bytes, offset, length);
+        return length;
+    }
+
+    private void cancel() {
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(PREFETCH);
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        signals.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        signals.add(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        signals.add(COMPLETE);
+    }
+}
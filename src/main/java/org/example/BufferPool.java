@@ -0,0 +1,350 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.*;
+import java.lang.ref.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class BufferPool {
+    static final int MIN_SHIFT = 12;
+    static final int MAX_SHIFT = 20;
+    static final int MAX_SIZE = 1 << MAX_SHIFT;
+    static final int THREAD_CACHE_MAX_SHIFT = 16;
+    static final int THREAD_CACHE_SIZE = 4;
+    static final long MAX_POOLED_BYTES_PER_CLASS = 4L << 20;
+    static final String LEAK_DETECTION_PROPERTY = "org.example.bufferPool.leakDetection";
+    static final BufferPool DEFAULT = new BufferPool(Boolean.getBoolean(LEAK_DETECTION_PROPERTY));
+
+    private static final MethodHandle IS_VIRTUAL = isVirtualHandle();
+    private static final System.Logger LOGGER = System.getLogger(BufferPool.class.getName());
+
+    private final SizeClass[] classes = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+    private final SizeClass[] heapClasses = new SizeClass[classes.length];
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(ThreadCache::new);
+    private final boolean leakDetection;
+    private final ReferenceQueue<ByteBuffer> leakQueue = new ReferenceQueue<>();
+    private final Map<Integer, Tracker> trackers = new ConcurrentHashMap<>();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder pooledBytes = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    BufferPool(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+        for (int i = 0; i < classes.length; i++) {
+            int size = 1 << (MIN_SHIFT + i);
+            classes[i] = new SizeClass(size, (int) Math.max(2, MAX_POOLED_BYTES_PER_CLASS / size));
+            heapClasses[i] = new SizeClass(size, (int) Math.max(2, MAX_POOLED_BYTES_PER_CLASS / size));
+        }
+    }
+
+    ByteBuffer acquire(int minCapacity) {
+        return acquire(minCapacity, true);
+    }
+
+    ByteBuffer acquireHeap(int minCapacity) {
+        return acquire(minCapacity, false);
+    }
+
+    private ByteBuffer acquire(int minCapacity, boolean direct) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("Invalid buffer capacity " + minCapacity);
+        }
+
+        acquired.increment();
+        if (leakDetection) {
+            reportLeaks();
+        }
+
+        int index = sizeClass(minCapacity);
+        ByteBuffer buffer = index < 0 ? allocate(minCapacity, direct) : take(index, direct);
+        buffer.clear().order(ByteOrder.BIG_ENDIAN);
+        return leakDetection ? track(buffer) : buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (leakDetection) {
+            buffer = untrack(buffer);
+        }
+
+        released.increment();
+        recycle(buffer);
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        boolean direct = buffer.isDirect();
+        int index = direct || buffer.hasArray() ? sizeClass(buffer.capacity()) : -1;
+        SizeClass[] pool = direct ? classes : heapClasses;
+        if (index < 0 || pool[index].size != buffer.capacity()) {
+            return;
+        }
+
+        if (direct && index <= THREAD_CACHE_MAX_SHIFT - MIN_SHIFT && !isVirtualThread()) {
+            ThreadCache cache = threadCaches.get();
+            if (cache.counts[index] < THREAD_CACHE_SIZE) {
+                cache.buffers[index][cache.counts[index]++] = buffer;
+                pooledBytes.add(buffer.capacity());
+                return;
+            }
+        }
+
+        if (pool[index].push(buffer)) {
+            pooledBytes.add(buffer.capacity());
+        }
+    }
+
+    private ByteBuffer take(int index, boolean direct) {
+        if (direct && index <= THREAD_CACHE_MAX_SHIFT - MIN_SHIFT && !isVirtualThread()) {
+            ThreadCache cache = threadCaches.get();
+            if (cache.counts[index] > 0) {
+                ByteBuffer buffer = cache.buffers[index][--cache.counts[index]];
+                cache.buffers[index][cache.counts[index]] = null;
+                pooledBytes.add(-buffer.capacity());
+                return buffer;
+            }
+        }
+
+        SizeClass sizeClass = direct ? classes[index] : heapClasses[index];
+        ByteBuffer buffer = sizeClass.pop();
+        if (buffer == null) {
+            return allocate(sizeClass.size, direct);
+        }
+
+        pooledBytes.add(-buffer.capacity());
+        return buffer;
+    }
+
+    private ByteBuffer allocate(int capacity, boolean direct) {
+        allocated.increment();
+        allocatedBytes.add(capacity);
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    static int sizeClass(int capacity) {
+        int shift = capacity <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    private ByteBuffer track(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        int key = System.identityHashCode(view);
+        Tracker tracker = new Tracker(view, leakQueue, buffer, key);
+        trackers.compute(key, (k, head) -> {
+            tracker.next = head;
+            return tracker;
+        });
+        return view;
+    }
+
+    private ByteBuffer untrack(ByteBuffer view) {
+        Tracker[] found = new Tracker[1];
+        trackers.computeIfPresent(System.identityHashCode(view), (k, head) -> {
+            Tracker previous = null;
+            for (Tracker tracker = head; tracker != null; previous = tracker, tracker = tracker.next) {
+                if (tracker.refersTo(view)) {
+                    found[0] = tracker;
+                    if (previous == null) {
+                        return tracker.next;
+                    }
+                    previous.next = tracker.next;
+                    return head;
+                }
+            }
+            return head;
+        });
+
+        if (found[0] == null) {
+            throw new IllegalStateException("Buffer was released twice or not acquired from this pool");
+        }
+        found[0].clear();
+        return found[0].buffer;
+    }
+
+    private void reportLeaks() {
+        for (Reference<? extends ByteBuffer> reference; (reference = leakQueue.poll()) != null; ) {
+            Tracker tracker = (Tracker) reference;
+            trackers.computeIfPresent(tracker.key, (k, head) -> {
+                if (head == tracker) {
+                    return tracker.next;
+                }
+                for (Tracker previous = head; previous.next != null; previous = previous.next) {
+                    if (previous.next == tracker) {
+                        previous.next = tracker.next;
+                        break;
+                    }
+                }
+                return head;
+            });
+
+            leaks.increment();
+            released.increment();
+            LOGGER.log(System.Logger.Level.WARNING, "Pooled buffer of " + tracker.buffer.capacity()
+                    + " bytes was not released", tracker.site);
+        }
+    }
+
+    private static boolean isVirtualThread() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static MethodHandle isVirtualHandle() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public boolean leakDetection() {
+        return leakDetection;
+    }
+
+    public long acquired() {
+        return acquired.sum();
+    }
+
+    public long allocated() {
+        return allocated.sum();
+    }
+
+    public long allocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    public long pooledBytes() {
+        return pooledBytes.sum();
+    }
+
+    public long inUse() {
+        if (leakDetection) {
+            reportLeaks();
+        }
+        return acquired.sum() - released.sum();
+    }
+
+    public long leaks() {
+        if (leakDetection) {
+            reportLeaks();
+        }
+        return leaks.sum();
+    }
+
+    private static final class SizeClass {
+        final int size;
+        private final ByteBuffer[] free;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int count;
+
+        SizeClass(int size, int maxPooled) {
+            this.size = size;
+            this.free = new ByteBuffer[maxPooled];
+        }
+
+        boolean push(ByteBuffer buffer) {
+            lock.lock();
+            try {
+                if (count == free.length) {
+                    return false;
+                }
+                free[count++] = buffer;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        ByteBuffer pop() {
+            lock.lock();
+            try {
+                if (count == 0) {
+                    return null;
+                }
+                ByteBuffer buffer = free[--count];
+                free[count] = null;
+                return buffer;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class ThreadCache {
+        final ByteBuffer[][] buffers = new ByteBuffer[THREAD_CACHE_MAX_SHIFT - MIN_SHIFT + 1][THREAD_CACHE_SIZE];
+        final int[] counts = new int[buffers.length];
+    }
+
+    private static final class Tracker extends PhantomReference<ByteBuffer> {
+        final ByteBuffer buffer;
+        final int key;
+        final Throwable site = new Throwable("Buffer acquired here");
+        Tracker next;
+
+        Tracker(ByteBuffer view, ReferenceQueue<ByteBuffer> queue, ByteBuffer buffer, int key) {
+            super(view, queue);
+            this.buffer = buffer;
+            this.key = key;
+        }
+    }
+
+    final class Output extends OutputStream {
+        private ByteBuffer buffer;
+
+        Output(int initialCapacity) {
+            buffer = acquire(initialCapacity);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureRemaining(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureRemaining(len);
+            buffer.put(b, off, len);
+        }
+
+        private void ensureRemaining(int length) {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+
+            ByteBuffer grown = acquire((int) Math.min(Integer.MAX_VALUE,
+                    Math.max(2L * buffer.capacity(), (long) buffer.position() + length)));
+            grown.put(buffer.flip());
+            release(buffer);
+            buffer = grown;
+        }
+
+        int readFrom(ReadableByteChannel channel) throws IOException {
+            ensureRemaining(1);
+            return channel.read(buffer);
+        }
+
+        ByteBuffer toBuffer() {
+            return buffer.flip();
+        }
+
+        void discard() {
+            release(buffer);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+class CachingResolver {
+    static final long DEFAULT_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    static final long DEFAULT_NEGATIVE_TTL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Resolver resolver;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier nanoClock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    CachingResolver(Resolver resolver, long ttlNanos, long negativeTtlNanos) {
+        this(resolver, ttlNanos, negativeTtlNanos, System::nanoTime);
+    }
+
+    CachingResolver(Resolver resolver, long ttlNanos, long negativeTtlNanos, LongSupplier nanoClock) {
+        if (ttlNanos < 0 || negativeTtlNanos < 0) {
+            throw new IllegalArgumentException("Invalid DNS cache TTL");
+        }
+
+        this.resolver = resolver;
+        this.ttlNanos = ttlNanos;
+        this.negativeTtlNanos = negativeTtlNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    private static class Entry {
+        final InetAddress[] addresses;
+        final String failure;
+        final long expiresNanos;
+        final AtomicInteger next = new AtomicInteger();
+
+        Entry(InetAddress[] addresses, String failure, long expiresNanos) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+    InetAddress next(String host) throws UnknownHostException {
+        long now = nanoClock.getAsLong();
+        Entry entry = entries.get(host);
+        if (entry == null || now - entry.expiresNanos >= 0) {
+            entry = lookup(host, now);
+        }
+
+        if (entry.failure != null) {
+            throw new UnknownHostException(entry.failure);
+        }
+
+        InetAddress[] addresses = entry.addresses;
+        return addresses[Math.floorMod(entry.next.getAndIncrement(), addresses.length)];
+    }
+
+    private Entry lookup(String host, long now) {
+        Entry entry;
+        try {
+            InetAddress[] addresses = resolver.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+            entry = new Entry(addresses.clone(), null, now + ttlNanos);
+        } catch (UnknownHostException e) {
+            entry = new Entry(null, e.getMessage() == null ? host : e.getMessage(), now + negativeTtlNanos);
+        }
+
+        entries.put(host, entry);
+        return entry;
+    }
+
+    void invalidate(String host) {
+        entries.remove(host);
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
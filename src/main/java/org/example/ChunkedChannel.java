@@ -0,0 +1,57 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+class ChunkedChannel implements ReadableByteChannel {
+    private final HttpInput in;
+    final ChunkedDecoder decoder = new ChunkedDecoder();
+    private boolean open = true;
+
+    ChunkedChannel(HttpInput in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new IOException("Body channel is closed");
+        }
+
+        int start = dst.position();
+        while (dst.hasRemaining() && !decoder.isDone()) {
+            if (!in.buffer.hasRemaining() && in.fill() == -1) {
+                throw new EOFException("Connection closed before end of chunked body");
+            }
+
+            decoder.decode(in.buffer, dst);
+            if (dst.position() > start && !in.buffer.hasRemaining()) {
+                break;
+            }
+        }
+
+        int read = dst.position() - start;
+        return read == 0 && decoder.isDone() ? -1 : read;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+
+        open = false;
+        while (!decoder.isDone()) {
+            if (!in.buffer.hasRemaining() && in.fill() == -1) {
+                throw new EOFException("Connection closed before end of chunked body");
+            }
+            decoder.decode(in.buffer, null);
+        }
+    }
+}
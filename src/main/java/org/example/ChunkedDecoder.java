@@ -0,0 +1,144 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+class ChunkedDecoder {
+    private static final int SIZE = 0;
+    private static final int EXTENSION = 1;
+    private static final int SIZE_LF = 2;
+    private static final int DATA = 3;
+    private static final int DATA_CR = 4;
+    private static final int DATA_LF = 5;
+    private static final int TRAILER = 6;
+    private static final int DONE = 7;
+    private static final int MAX_TRAILER_LINE_LENGTH = 8192;
+
+    final HttpHeaders trailers = new HttpHeaders();
+    private final StringBuilder trailerLine = new StringBuilder();
+    private int state = SIZE;
+    private long chunkSize;
+    private boolean sizeDigits;
+    private long chunkRemaining;
+
+    boolean isDone() {
+        return state == DONE;
+    }
+
+    boolean decode(ByteBuffer src, ByteBuffer dst) throws IOException {
+        while (src.hasRemaining() && state != DONE) {
+            switch (state) {
+                case SIZE -> readSize(src.get());
+                case EXTENSION -> {
+                    if (src.get() == '\n') {
+                        endOfSize();
+                    }
+                }
+                case SIZE_LF -> {
+                    if (src.get() != '\n') {
+                        throw new IOException("Invalid chunk size line");
+                    }
+                    endOfSize();
+                }
+                case DATA -> {
+                    if (dst != null && !dst.hasRemaining()) {
+                        return false;
+                    }
+                    readData(src, dst);
+                }
+                case DATA_CR -> {
+                    byte b = src.get();
+                    if (b == '\r') {
+                        state = DATA_LF;
+                    } else if (b == '\n') {
+                        state = SIZE;
+                    } else {
+                        throw new IOException("Missing CRLF after chunk data");
+                    }
+                }
+                case DATA_LF -> {
+                    if (src.get() != '\n') {
+                        throw new IOException("Missing CRLF after chunk data");
+                    }
+                    state = SIZE;
+                }
+                case TRAILER -> readTrailer(src.get());
+                default -> throw new IllegalStateException("Unexpected state " + state);
+            }
+        }
+        return state == DONE;
+    }
+
+    private void readSize(byte b) throws IOException {
+        int digit = Character.digit(b, 16);
+        if (digit >= 0) {
+            if (chunkSize > (Long.MAX_VALUE >> 4)) {
+                throw new IOException("Chunk size too large");
+            }
+            chunkSize = chunkSize * 16 + digit;
+            sizeDigits = true;
+        } else if (b == ';' || b == ' ' || b == '\t') {
+            state = EXTENSION;
+        } else if (b == '\r') {
+            state = SIZE_LF;
+        } else if (b == '\n') {
+            endOfSize();
+        } else {
+            throw new IOException("Invalid chunk size");
+        }
+    }
+
+    private void endOfSize() throws IOException {
+        if (!sizeDigits) {
+            throw new IOException("Invalid chunk size");
+        }
+
+        chunkRemaining = chunkSize;
+        state = chunkSize == 0 ? TRAILER : DATA;
+        chunkSize = 0;
+        sizeDigits = false;
+    }
+
+    private void readData(ByteBuffer src, ByteBuffer dst) {
+        int count = (int) Math.min(src.remaining(), chunkRemaining);
+        if (dst != null) {
+            count = Math.min(count, dst.remaining());
+            dst.put(dst.position(), src, src.position(), count);
+            dst.position(dst.position() + count);
+        }
+
+        src.position(src.position() + count);
+        chunkRemaining -= count;
+        if (chunkRemaining == 0) {
+            state = DATA_CR;
+        }
+    }
+
+    private void readTrailer(byte b) throws IOException {
+        if (b != '\n') {
+            if (trailerLine.length() >= MAX_TRAILER_LINE_LENGTH) {
+                throw new IOException("Trailer line too long");
+            }
+            trailerLine.append((char) (b & 0xff));
+            return;
+        }
+
+        int end = trailerLine.length();
+        if (end > 0 && trailerLine.charAt(end - 1) == '\r') {
+            end--;
+        }
+
+        if (end == 0) {
+            state = DONE;
+            return;
+        }
+
+        int colon = trailerLine.indexOf(":");
+        if (colon <= 0 || colon >= end) {
+            throw new IOException("Invalid trailer");
+        }
+
+        trailers.add(trailerLine.substring(0, colon).trim(), trailerLine.substring(colon + 1, end).trim());
+        trailerLine.setLength(0);
+    }
+}
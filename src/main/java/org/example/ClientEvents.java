@@ -0,0 +1,261 @@
+package org.example;
+
+import jdk.jfr.*;
+
+final class ClientEvents {
+    static final String CATEGORY = "HTTP Client";
+
+    private static final EventType REQUEST = EventType.getEventType(RequestEvent.class);
+    private static final EventType CONNECTION_OPEN = EventType.getEventType(ConnectionOpenEvent.class);
+    private static final EventType CONNECTION_REUSE = EventType.getEventType(ConnectionReuseEvent.class);
+    private static final EventType CONNECTION_CLOSE = EventType.getEventType(ConnectionCloseEvent.class);
+    private static final EventType RESPONSE_HEADERS = EventType.getEventType(ResponseHeadersEvent.class);
+    private static final EventType RESPONSE_BODY = EventType.getEventType(ResponseBodyEvent.class);
+
+    private ClientEvents() {
+    }
+
+    static RequestEvent beginRequest() {
+        if (!REQUEST.isEnabled()) {
+            return null;
+        }
+
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        return event;
+    }
+
+    static ConnectionOpenEvent beginConnectionOpen() {
+        if (!CONNECTION_OPEN.isEnabled()) {
+            return null;
+        }
+
+        ConnectionOpenEvent event = new ConnectionOpenEvent();
+        event.begin();
+        return event;
+    }
+
+    static ResponseHeadersEvent beginResponseHeaders() {
+        if (!RESPONSE_HEADERS.isEnabled()) {
+            return null;
+        }
+
+        ResponseHeadersEvent event = new ResponseHeadersEvent();
+        event.begin();
+        return event;
+    }
+
+    static ResponseBodyEvent beginResponseBody() {
+        if (!RESPONSE_BODY.isEnabled()) {
+            return null;
+        }
+
+        ResponseBodyEvent event = new ResponseBodyEvent();
+        event.begin();
+        return event;
+    }
+
+    static void connectionReused(Connection connection, long now) {
+        if (!CONNECTION_REUSE.isEnabled()) {
+            return;
+        }
+
+        ConnectionReuseEvent event = new ConnectionReuseEvent();
+        event.route = connection.route;
+        event.idle = now - connection.lastUsedNanos;
+        event.commit();
+    }
+
+    static void connectionClosed(Connection connection) {
+        if (!CONNECTION_CLOSE.isEnabled()) {
+            return;
+        }
+
+        ConnectionCloseEvent event = new ConnectionCloseEvent();
+        event.route = connection.route;
+        event.lifetime = System.nanoTime() - connection.openedNanos;
+        event.commit();
+    }
+
+    @Name("org.example.Request")
+    @Label("HTTP Request")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class RequestEvent extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("Method")
+        String method;
+
+        @Label("Status")
+        int status;
+
+        @Label("Pooled Connection")
+        boolean pooled;
+
+        @Label("Bytes Sent")
+        @DataAmount
+        long bytesSent;
+
+        @Label("Bytes Received")
+        @DataAmount
+        long bytesReceived;
+
+        @Label("DNS")
+        @Timespan
+        long dns;
+
+        @Label("Connect")
+        @Timespan
+        long connect;
+
+        @Label("Write")
+        @Timespan
+        long write;
+
+        @Label("Time To First Byte")
+        @Timespan
+        long firstByte;
+
+        @Label("Body")
+        @Timespan
+        long body;
+
+        void end(RequestTimings timings) {
+            end();
+            if (!shouldCommit()) {
+                return;
+            }
+
+            route = timings.route();
+            method = timings.method();
+            status = timings.statusCode();
+            pooled = timings.pooled();
+            bytesSent = timings.bytesSent();
+            bytesReceived = timings.bytesReceived();
+            dns = timings.dnsNanos();
+            connect = timings.connectNanos();
+            write = timings.writeNanos();
+            firstByte = timings.firstByteNanos();
+            body = timings.bodyNanos();
+            commit();
+        }
+    }
+
+    @Name("org.example.ConnectionOpen")
+    @Label("HTTP Connection Open")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConnectionOpenEvent extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("TLS")
+        boolean secure;
+
+        @Label("Connected")
+        boolean connected;
+
+        void end(String route, boolean secure, boolean connected) {
+            end();
+            if (shouldCommit()) {
+                this.route = route;
+                this.secure = secure;
+                this.connected = connected;
+                commit();
+            }
+        }
+    }
+
+    @Name("org.example.ConnectionReuse")
+    @Label("HTTP Connection Reuse")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConnectionReuseEvent extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("Idle Time")
+        @Timespan
+        long idle;
+    }
+
+    @Name("org.example.ConnectionClose")
+    @Label("HTTP Connection Close")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ConnectionCloseEvent extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("Lifetime")
+        @Timespan
+        long lifetime;
+    }
+
+    @Name("org.example.ResponseHeaders")
+    @Label("HTTP Response Headers")
+    @Description("Waiting for and parsing the response status line and headers")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ResponseHeadersEvent extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("Method")
+        String method;
+
+        @Label("Status")
+        int status;
+
+        @Label("Header Bytes")
+        @DataAmount
+        long bytes;
+
+        void end(RequestTimings timings, long bytes) {
+            end();
+            if (shouldCommit()) {
+                route = timings.route();
+                method = timings.method();
+                status = timings.statusCode();
+                this.bytes = bytes;
+                commit();
+            }
+        }
+    }
+
+    @Name("org.example.ResponseBody")
+    @Label("HTTP Response Body")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ResponseBodyEvent extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("Method")
+        String method;
+
+        @Label("Status")
+        int status;
+
+        @Label("Body Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Reusable")
+        boolean reusable;
+
+        void end(RequestTimings timings, long bytes, boolean reusable) {
+            end();
+            if (shouldCommit()) {
+                route = timings.route();
+                method = timings.method();
+                status = timings.statusCode();
+                this.bytes = bytes;
+                this.reusable = reusable;
+                commit();
+            }
+        }
+    }
+}
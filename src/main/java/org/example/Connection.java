@@ -0,0 +1,82 @@
+package org.example;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import javax.net.ssl.SSLSocket;
+
+class Connection implements Closeable {
+    final String route;
+    final Socket socket;
+    final HttpInput input;
+    final OutputStream out;
+    final WritableByteChannel channel;
+    final long openedNanos;
+    long lastUsedNanos;
+    boolean reused;
+    private int readTimeoutMillis;
+    private final ByteBuffer probe = ByteBuffer.allocate(1);
+
+    Connection(String route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.input = new HttpInput(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.channel = socket.getChannel() != null && !(socket instanceof SSLSocket)
+                ? socket.getChannel()
+                : Channels.newChannel(out);
+        this.openedNanos = System.nanoTime();
+        this.lastUsedNanos = openedNanos;
+    }
+
+    void readTimeout(int millis) throws SocketException {
+        if (readTimeoutMillis != millis) {
+            socket.setSoTimeout(millis);
+            readTimeoutMillis = millis;
+        }
+    }
+
+    boolean isExpired(long now, long idleTimeoutNanos) {
+        return now - lastUsedNanos > idleTimeoutNanos;
+    }
+
+    boolean isStale() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return true;
+        }
+
+        if (input.buffer.hasRemaining()) {
+            return true;
+        }
+
+        SocketChannel socketChannel = socket.getChannel();
+        try {
+            if (socketChannel == null) {
+                return socket.getInputStream().available() > 0;
+            }
+
+            synchronized (socketChannel.blockingLock()) {
+                socketChannel.configureBlocking(false);
+                try {
+                    return socketChannel.read(probe.clear()) != 0;
+                } finally {
+                    socketChannel.configureBlocking(true);
+                }
+            }
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!socket.isClosed()) {
+            ClientEvents.connectionClosed(this);
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class ConnectionPool implements Closeable {
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 8;
+    static final long DEFAULT_IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final int maxConnectionsPerRoute;
+    private final long idleTimeoutNanos;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reaper;
+    private volatile boolean closed;
+
+    ConnectionPool(int maxConnectionsPerRoute, long idleTimeoutNanos) {
+        if (maxConnectionsPerRoute <= 0) {
+            throw new IllegalArgumentException("Invalid max connections per route " + maxConnectionsPerRoute);
+        }
+
+        if (idleTimeoutNanos <= 0) {
+            throw new IllegalArgumentException("Invalid idle timeout");
+        }
+
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    interface ConnectionFactory {
+        Connection open() throws IOException;
+    }
+
+    private static class Route {
+        final Semaphore permits;
+        final Deque<Connection> idle = new ArrayDeque<>();
+
+        Route(int maxConnections) {
+            permits = new Semaphore(maxConnections, true);
+        }
+    }
+
+    Connection acquire(String routeKey, ConnectionFactory factory) throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+
+        Route route = routes.computeIfAbsent(routeKey, k -> new Route(maxConnectionsPerRoute));
+        try {
+            route.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + routeKey);
+        }
+
+        return take(route, factory);
+    }
+
+    Connection tryAcquire(String routeKey, ConnectionFactory factory) throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+
+        Route route = routes.computeIfAbsent(routeKey, k -> new Route(maxConnectionsPerRoute));
+        if (!route.permits.tryAcquire()) {
+            return null;
+        }
+
+        return take(route, factory);
+    }
+
+    private Connection take(Route route, ConnectionFactory factory) throws IOException {
+        try {
+            Connection connection = pollIdle(route);
+            if (connection != null) {
+                connection.reused = true;
+                ClientEvents.connectionReused(connection, System.nanoTime());
+                return connection;
+            }
+
+            return factory.open();
+        } catch (IOException | RuntimeException e) {
+            route.permits.release();
+            throw e;
+        }
+    }
+
+    private Connection pollIdle(Route route) {
+        long now = System.nanoTime();
+        while (true) {
+            Connection connection;
+            synchronized (route) {
+                connection = route.idle.pollFirst();
+            }
+
+            if (connection == null) {
+                return null;
+            }
+
+            if (!connection.isExpired(now, idleTimeoutNanos) && !connection.isStale()) {
+                return connection;
+            }
+
+            connection.close();
+        }
+    }
+
+    void release(Connection connection) {
+        Route route = routes.get(connection.route);
+        if (route == null || closed) {
+            connection.close();
+            return;
+        }
+
+        connection.lastUsedNanos = System.nanoTime();
+        synchronized (route) {
+            route.idle.addFirst(connection);
+        }
+        route.permits.release();
+        startReaper();
+    }
+
+    void discard(Connection connection) {
+        connection.close();
+        Route route = routes.get(connection.route);
+        if (route != null) {
+            route.permits.release();
+        }
+    }
+
+    int idleCount(String routeKey) {
+        Route route = routes.get(routeKey);
+        if (route == null) {
+            return 0;
+        }
+
+        synchronized (route) {
+            return route.idle.size();
+        }
+    }
+
+    int evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Route route : routes.values()) {
+            List<Connection> expired = new ArrayList<>();
+            synchronized (route) {
+                for (Iterator<Connection> it = route.idle.iterator(); it.hasNext(); ) {
+                    Connection connection = it.next();
+                    if (connection.isExpired(now, idleTimeoutNanos) || connection.socket.isClosed()) {
+                        it.remove();
+                        expired.add(connection);
+                    }
+                }
+            }
+
+            for (Connection connection : expired) {
+                connection.close();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private synchronized void startReaper() {
+        if (reaper != null || closed) {
+            return;
+        }
+
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "http-connection-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutNanos / 2, TimeUnit.MILLISECONDS.toNanos(100));
+        reaper.scheduleAtFixedRate(this::evictExpired, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (reaper != null) {
+                reaper.shutdownNow();
+            }
+        }
+
+        for (Route route : routes.values()) {
+            synchronized (route) {
+                route.idle.forEach(Connection::close);
+                route.idle.clear();
+            }
+        }
+    }
+}
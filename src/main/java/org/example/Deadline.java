@@ -0,0 +1,126 @@
+package org.example;
+
+import java.io.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+final class Deadline {
+    static final Deadline NONE = new Deadline(0, false);
+
+    private static final int ACTIVE = 0;
+    private static final int EXPIRED = 1;
+    private static final int ABANDONED = 2;
+
+    final long timeoutNanos;
+    private final long expiresAtNanos;
+    private final boolean abortable;
+    private final ReentrantLock lock = new ReentrantLock();
+    private TimerWheel.Timeout timer;
+    private Closeable target;
+    private volatile int state = ACTIVE;
+
+    private Deadline(long timeoutNanos, boolean abortable) {
+        this.timeoutNanos = timeoutNanos;
+        this.expiresAtNanos = System.nanoTime() + timeoutNanos;
+        this.abortable = abortable;
+    }
+
+    static Deadline start(TimerWheel timers, long timeoutNanos) {
+        Deadline deadline = new Deadline(timeoutNanos, true);
+        if (timeoutNanos > 0) {
+            deadline.timer = timers.schedule(timeoutNanos, deadline::expire);
+        }
+        return deadline;
+    }
+
+    boolean hasTimeout() {
+        return timeoutNanos > 0;
+    }
+
+    long remainingNanos() {
+        return hasTimeout() ? expiresAtNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    boolean isDone() {
+        return state != ACTIVE;
+    }
+
+    void attach(Closeable target) {
+        if (!abortable) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (state == ACTIVE) {
+                this.target = target;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(target);
+    }
+
+    void detach() {
+        if (!abortable) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            target = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void expire() {
+        abort(EXPIRED);
+    }
+
+    void abandon() {
+        abort(ABANDONED);
+    }
+
+    private void abort(int reason) {
+        Closeable target;
+        lock.lock();
+        try {
+            if (state != ACTIVE) {
+                return;
+            }
+            state = reason;
+            target = this.target;
+            this.target = null;
+        } finally {
+            lock.unlock();
+        }
+
+        if (target != null) {
+            closeQuietly(target);
+        }
+    }
+
+    void cancel() {
+        if (timer != null) {
+            timer.cancel();
+        }
+    }
+
+    IOException failure(IOException e) {
+        if (state == EXPIRED && !(e instanceof HttpTimeoutException)) {
+            HttpTimeoutException timeout = new HttpTimeoutException("Request timed out after "
+                    + timeoutNanos / 1_000_000 + " ms");
+            timeout.initCause(e);
+            return timeout;
+        }
+        return e;
+    }
+
+    private static void closeQuietly(Closeable target) {
+        try {
+            target.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+class FixedLengthChannel implements ReadableByteChannel {
+    private final HttpInput in;
+    private final boolean untilEof;
+    private long remaining;
+    private boolean open = true;
+
+    FixedLengthChannel(HttpInput in, long length) {
+        this.in = in;
+        this.untilEof = length < 0;
+        this.remaining = untilEof ? Long.MAX_VALUE : length;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new IOException("Body channel is closed");
+        }
+
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int oldLimit = dst.limit();
+        if (dst.remaining() > remaining) {
+            dst.limit(dst.position() + (int) remaining);
+        }
+
+        int read;
+        try {
+            read = in.read(dst);
+        } finally {
+            dst.limit(oldLimit);
+        }
+
+        if (read == -1) {
+            if (untilEof) {
+                remaining = 0;
+                return -1;
+            }
+            throw new EOFException("Connection closed before end of body");
+        }
+
+        remaining -= read;
+        return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+
+        long skipped = in.skip(remaining);
+        if (!untilEof && skipped < remaining) {
+            remaining -= skipped;
+            open = false;
+            throw new EOFException("Connection closed before end of body");
+        }
+        remaining = 0;
+        open = false;
+    }
+}
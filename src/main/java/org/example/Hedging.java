@@ -0,0 +1,152 @@
+package org.example;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+class Hedging {
+    static final int MIN_SAMPLES = 20;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final Map<String, LatencyHistogram> routes = new ConcurrentHashMap<>();
+    final LongAdder hedged = new LongAdder();
+    final LongAdder hedgeWins = new LongAdder();
+
+    Hedging(double percentile, long minDelayNanos) {
+        this.percentile = percentile;
+        this.minDelayNanos = minDelayNanos;
+    }
+
+    static boolean isEligible(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<?> bodyHandler) {
+        return client.isReplayable(request) && !(bodyHandler instanceof HttpResponse.StreamingBodyHandler);
+    }
+
+    long delayNanos(String route) {
+        LatencyHistogram latency = routes.get(route);
+        if (latency == null || latency.count() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(minDelayNanos, latency.valueAtPercentile(percentile));
+    }
+
+    <T> HttpResponse<T> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                             Deadline deadline) throws IOException {
+        long start = System.nanoTime();
+        long delay = delayNanos(request.route());
+        if (delay < 0 || delay >= deadline.remainingNanos()) {
+            HttpResponse<T> response = client.sendAttempt(request, bodyHandler, deadline);
+            record(request.route(), start);
+            return response;
+        }
+
+        Race<T> race = new Race<>(deadline);
+        TimerWheel.Timeout hedgeTimer = client.timers().schedule(delay, () -> race.hedge(client, request, bodyHandler));
+        try {
+            race.finished(client.sendAttempt(request, bodyHandler, deadline), null, false);
+        } catch (IOException | RuntimeException e) {
+            if (hedgeTimer.cancel()) {
+                throw e;
+            }
+            race.finished(null, e, false);
+        }
+        hedgeTimer.cancel();
+
+        HttpResponse<T> response = race.await();
+        record(request.route(), start);
+        return response;
+    }
+
+    private void record(String route, long start) {
+        routes.computeIfAbsent(route, key -> new LatencyHistogram()).record(System.nanoTime() - start);
+    }
+
+    class Race<T> {
+        final CompletableFuture<HttpResponse<T>> winner = new CompletableFuture<>();
+        final AtomicInteger running = new AtomicInteger(1);
+        final AtomicBoolean decided = new AtomicBoolean();
+        final Deadline primary;
+        volatile Deadline hedge;
+
+        Race(Deadline primary) {
+            this.primary = primary;
+        }
+
+        void hedge(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+            running.incrementAndGet();
+            if (winner.isDone()) {
+                running.decrementAndGet();
+                return;
+            }
+
+            Deadline attempt = Deadline.start(client.timers(), primary.hasTimeout()
+                    ? Math.max(primary.remainingNanos(), 1)
+                    : 0);
+            hedge = attempt;
+            hedged.increment();
+            try {
+                client.executor().execute(() -> {
+                    try {
+                        if (winner.isDone()) {
+                            running.decrementAndGet();
+                        } else {
+                            finished(client.sendAttempt(request, bodyHandler, attempt), null, true);
+                        }
+                    } catch (Throwable t) {
+                        finished(null, t, true);
+                    } finally {
+                        attempt.cancel();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                attempt.cancel();
+                finished(null, e, true);
+            }
+        }
+
+        void finished(HttpResponse<T> response, Throwable t, boolean hedgeAttempt) {
+            if (t == null) {
+                if (!decided.compareAndSet(false, true)) {
+                    response.close();
+                    return;
+                }
+                if (hedgeAttempt) {
+                    hedgeWins.increment();
+                }
+                winner.complete(response);
+                Deadline loser = hedgeAttempt ? primary : hedge;
+                if (loser != null) {
+                    loser.abandon();
+                }
+                return;
+            }
+
+            if (running.decrementAndGet() == 0) {
+                winner.completeExceptionally(t);
+            }
+        }
+
+        HttpResponse<T> await() throws IOException {
+            try {
+                return winner.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                winner.thenAccept(HttpResponse::close);
+                Deadline attempt = hedge;
+                if (attempt != null) {
+                    attempt.abandon();
+                }
+                throw new InterruptedIOException("Interrupted while waiting for hedged response");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -2,97 +2,594 @@ package org.example;
 
 import java.io.*;
 import java.net.*;
+import java.lang.reflect.Method;
+import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import javax.net.ssl.SSLContext;
 
-public class HttpClient {
-    private static final int HTTP_PORT = 80;
+public class HttpClient implements AutoCloseable {
+    static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    static final int CHUNK_SIZE = 16 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private int maxConnectionsPerRoute = ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private long idleTimeoutNanos = ConnectionPool.DEFAULT_IDLE_TIMEOUT_NANOS;
+    ConnectionPool connectionPool = new ConnectionPool(maxConnectionsPerRoute, idleTimeoutNanos);
+    private Executor executor;
+    private boolean ownsExecutor;
+    Semaphore inFlight = new Semaphore(DEFAULT_MAX_IN_FLIGHT);
+    private boolean decompression = true;
+    private int nioEventLoops;
+    NioTransport nioTransport;
+    private final Queue<Runnable> pendingNonBlocking = new ConcurrentLinkedQueue<>();
+    private long cacheMemoryBytes;
+    private Path cacheDirectory;
+    private long cacheDiskBytes;
+    ResponseCache cache;
+    private Resolver resolver = Resolver.system();
+    private long dnsTtlNanos = CachingResolver.DEFAULT_TTL_NANOS;
+    private long dnsNegativeTtlNanos = CachingResolver.DEFAULT_NEGATIVE_TTL_NANOS;
+    CachingResolver cachingResolver = new CachingResolver(resolver, dnsTtlNanos, dnsNegativeTtlNanos);
+    private SSLContext sslContext;
+    private String[] tlsProtocols;
+    private String[] tlsCipherSuites;
+    private TlsSockets tlsSockets;
+    private int pipeliningDepth;
+    Pipelines pipelines;
+    private int batchConcurrency = DEFAULT_MAX_IN_FLIGHT;
+    private int batchConcurrencyPerHost;
+    BatchScheduler batchScheduler;
+    RequestListener listener;
+    private long connectTimeoutNanos;
+    private long readTimeoutNanos;
+    private long requestTimeoutNanos;
+    private TimerWheel timers;
+    private double hedgingPercentile;
+    private long hedgingMinDelayNanos;
+    Hedging hedging;
 
     public static Builder newBuilder() {
         return new Builder();
     }
 
     public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException {
-        String host = request.uri().getHost();
-        try (Socket socket = getSocket(host);
-             OutputStream out = socket.getOutputStream();
-             InputStream in = socket.getInputStream()) {
-            sendRequest(request, out);
-            return new HttpResponse<>(in, responseBodyHandler);
+        if (cache != null) {
+            return cache.send(this, request, responseBodyHandler);
         }
+        return sendNetwork(request, responseBodyHandler);
     }
 
-    Socket getSocket(String host) throws IOException {
-        return new Socket(host, HTTP_PORT);
+    <T> HttpResponse<T> sendNetwork(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException {
+        if (nioTransport != null && !request.secure()) {
+            return awaitNonBlocking(sendNonBlocking(request, responseBodyHandler));
+        }
+
+        if (pipelines != null && Pipelines.isEligible(this, request, responseBodyHandler)) {
+            return pipelines.send(this, request, responseBodyHandler);
+        }
+
+        long timeoutNanos = requestTimeoutNanos(request);
+        boolean hedge = hedging != null && Hedging.isEligible(this, request, responseBodyHandler);
+        if (timeoutNanos == 0 && !hedge) {
+            return sendAttempt(request, responseBodyHandler, Deadline.NONE);
+        }
+
+        Deadline deadline = Deadline.start(timers(), timeoutNanos);
+        try {
+            return hedge
+                    ? hedging.send(this, request, responseBodyHandler, deadline)
+                    : sendAttempt(request, responseBodyHandler, deadline);
+        } finally {
+            deadline.cancel();
+        }
     }
 
-    void sendRequest(HttpRequest request, OutputStream out) throws IOException {
-        PrintWriter pw = new PrintWriter(out);
-        printFirstLine(request, pw);
+    <T> HttpResponse<T> sendAttempt(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler,
+                                    Deadline deadline) throws IOException {
+        try {
+            RequestTimings timings = RequestTimings.start(listener, request);
+            Connection connection = acquireConnection(request, deadline, timings);
+            try {
+                return exchange(connection, request, responseBodyHandler, deadline, timings);
+            } catch (IOException e) {
+                if (!connection.reused || !isReplayable(request) || deadline.isDone() || e instanceof SocketTimeoutException) {
+                    throw e;
+                }
+            }
 
-        HttpRequest.BodyPublisher bodyPublisher = request.bodyPublisher().get();
-        if (bodyPublisher.isInputStream) {
-            ByteArrayOutputStream baosBody = getBaosBody(bodyPublisher);
-            request.headers().replace("Content-Length", String.valueOf(baosBody.size()));
-            printHeaders(request.headers(), pw);
-            baosBody.writeTo(out);
+            RequestTimings retryTimings = RequestTimings.start(listener, request);
+            Connection freshConnection = acquireConnection(request, deadline, retryTimings);
+            return exchange(freshConnection, request, responseBodyHandler, deadline, retryTimings);
+        } catch (SocketTimeoutException e) {
+            HttpTimeoutException timeout = new HttpTimeoutException("Read timed out after "
+                    + readTimeoutMillis(request) + " ms");
+            timeout.initCause(e);
+            throw timeout;
+        } catch (IOException e) {
+            throw deadline.failure(e);
+        }
+    }
+
+    private Connection acquireConnection(HttpRequest request, Deadline deadline, RequestTimings timings)
+            throws IOException {
+        Connection connection;
+        try {
+            connection = connectionPool.acquire(request.route(), () -> openConnection(request, deadline, timings));
+        } catch (IOException | RuntimeException e) {
+            timings.finish();
+            throw e;
+        }
+
+        timings.pooled(connection.reused);
+        return connection;
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+                                                            HttpResponse.BodyHandler<T> responseBodyHandler) {
+        if (nioTransport != null && cache == null && !request.secure()) {
+            return sendNonBlocking(request, responseBodyHandler);
+        }
+
+        CompletableFuture<HttpResponse<T>> future = new CompletableFuture<>();
+        try {
+            executor().execute(() -> sendInFlight(request, responseBodyHandler, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public <T> List<CompletableFuture<HttpResponse<T>>> sendAll(Collection<HttpRequest> requests,
+                                                                HttpResponse.BodyHandler<T> responseBodyHandler) {
+        return batchScheduler.submit(this, requests, Objects.requireNonNull(responseBodyHandler));
+    }
+
+    private <T> void sendInFlight(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler,
+                                  CompletableFuture<HttpResponse<T>> future) {
+        boolean limitInFlight = nioTransport == null || request.secure();
+        try {
+            if (limitInFlight) {
+                inFlight.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
             return;
         }
 
-        printHeaders(request.headers(), pw);
+        try {
+            if (!future.isDone()) {
+                future.complete(send(request, responseBodyHandler));
+            }
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            if (limitInFlight) {
+                inFlight.release();
+            }
+        }
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendNonBlocking(HttpRequest request,
+                                                                   HttpResponse.BodyHandler<T> responseBodyHandler) {
+        CompletableFuture<HttpResponse<T>> future = new CompletableFuture<>();
+        long timeoutNanos = requestTimeoutNanos(request);
+        if (timeoutNanos > 0) {
+            TimerWheel.Timeout timeout = timers().schedule(timeoutNanos, () -> future.completeExceptionally(
+                    new HttpTimeoutException("Request timed out after " + timeoutNanos / 1_000_000 + " ms")));
+            future.whenComplete((response, t) -> timeout.cancel());
+        }
+
+        RequestTimings timings = RequestTimings.start(listener, request);
+        pendingNonBlocking.add(() -> {
+            try {
+                InetSocketAddress address = getSocketAddress(request.uri().getHost(), request.port());
+                ByteBuffer requestBytes = encodeRequest(request);
+                timings.sent(requestBytes.remaining());
+                CompletableFuture<HttpResponse<T>> exchange = nioTransport.send(request.route(), address, requestBytes,
+                        fileBody(request), isReplayable(request), !closeRequested(request), connectTimeoutNanos,
+                        readTimeoutNanos(request), responseBodyHandler, executor());
+                exchange.whenComplete((response, t) -> completeNonBlocking(future, response, t, timings));
+                future.whenComplete((response, t) -> {
+                    if (t != null) {
+                        exchange.cancel(false);
+                    }
+                });
+            } catch (Throwable t) {
+                completeNonBlocking(future, null, t, timings);
+            }
+        });
+        startPendingNonBlocking();
+        return future;
+    }
+
+    private <T> void completeNonBlocking(CompletableFuture<HttpResponse<T>> future, HttpResponse<T> response, Throwable t,
+                                         RequestTimings timings) {
+        if (response != null) {
+            timings.completed(response.statusCode());
+        }
+        timings.finish();
+        inFlight.release();
+        startPendingNonBlocking();
+        if (t != null) {
+            future.completeExceptionally(t);
+        } else if (!future.complete(response)) {
+            response.close();
+        }
+    }
+
+    private void startPendingNonBlocking() {
+        while (!pendingNonBlocking.isEmpty() && inFlight.tryAcquire()) {
+            Runnable next = pendingNonBlocking.poll();
+            if (next == null) {
+                inFlight.release();
+                return;
+            }
+            next.run();
+        }
+    }
+
+    private <T> HttpResponse<T> awaitNonBlocking(CompletableFuture<HttpResponse<T>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    ByteBuffer encodeRequest(HttpRequest request) throws IOException {
+        long contentLength = request.bodyPublisher().get().contentLength();
+        BufferPool.Output out = BufferPool.DEFAULT.new Output(
+                (int) Math.min(BufferPool.MAX_SIZE, request.encodedHead(decompression).remaining() + Math.max(contentLength, 0)));
+        try {
+            sendRequest(request, out, null);
+        } catch (IOException | RuntimeException e) {
+            out.discard();
+            throw e;
+        }
+        return out.toBuffer();
+    }
+
+    private Path fileBody(HttpRequest request) {
         String method = request.method();
-        if ((method.equals("POST") || method.equals("PUT")) && bodyPublisher.body != null)
-            printBody(bodyPublisher, pw);
+        if ((method.equals("POST") || method.equals("PUT"))
+                && request.bodyPublisher().get() instanceof HttpRequest.FilePublisher filePublisher) {
+            return filePublisher.file;
+        }
+        return null;
+    }
+
+    synchronized TimerWheel timers() {
+        if (timers == null) {
+            timers = new TimerWheel();
+        }
+        return timers;
+    }
+
+    long requestTimeoutNanos(HttpRequest request) {
+        Optional<Duration> timeout = request.timeout();
+        return timeout.isPresent() ? timeout.get().toNanos() : requestTimeoutNanos;
+    }
+
+    int readTimeoutMillis(HttpRequest request) {
+        return toMillis(readTimeoutNanos(request));
+    }
+
+    long readTimeoutNanos(HttpRequest request) {
+        Optional<Duration> timeout = request.readTimeout();
+        return timeout.isPresent() ? timeout.get().toNanos() : readTimeoutNanos;
+    }
+
+    static int toMillis(long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999)));
     }
 
-    void printFirstLine(HttpRequest request, PrintWriter pw) {
-        URI uri = request.uri();
+    synchronized Executor executor() {
+        if (executor == null) {
+            executor = defaultExecutor();
+            ownsExecutor = true;
+        }
+        return executor;
+    }
+
+    static ExecutorService defaultExecutor() {
+        try {
+            Method virtualThreadExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreadExecutor.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "http-client-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private <T> HttpResponse<T> exchange(Connection connection, HttpRequest request,
+                                         HttpResponse.BodyHandler<T> responseBodyHandler, Deadline deadline,
+                                         RequestTimings timings) throws IOException {
+        deadline.attach(connection);
+        try {
+            connection.readTimeout(readTimeoutMillis(request));
+            timings.writeStarted();
+            long sent = sendRequest(request, connection.out, connection.channel);
+            connection.out.flush();
+            timings.written(sent);
+        } catch (IOException | RuntimeException e) {
+            deadline.detach();
+            connectionPool.discard(connection);
+            timings.finish();
+            throw e;
+        }
+
+        try {
+            return new HttpResponse<>(connection.input, responseBodyHandler, decompression,
+                    timings.track(connection.input, reusable -> {
+                        if (reusable && !closeRequested(request)) {
+                            connectionPool.release(connection);
+                        } else {
+                            connectionPool.discard(connection);
+                        }
+                    }));
+        } finally {
+            deadline.detach();
+        }
+    }
+
+    boolean isIdempotent(HttpRequest request) {
         String method = request.method();
-        pw.print(method + " " + uri.getPath() + " HTTP/1.1\r\n");
+        return method.equals("GET") || method.equals("PUT") || method.equals("DELETE");
+    }
+
+    boolean closeRequested(HttpRequest request) {
+        String connection = request.headers().get(HttpHeaders.CONNECTION);
+        return connection != null && connection.equalsIgnoreCase("close");
+    }
+
+    boolean isReplayable(HttpRequest request) {
+        HttpRequest.BodyPublisher bodyPublisher = request.bodyPublisher().get();
+        return isIdempotent(request)
+                && (bodyPublisher instanceof HttpRequest.ByteBufferPublisher
+                || bodyPublisher instanceof HttpRequest.FilePublisher
+                || bodyPublisher instanceof HttpRequest.InputStreamPublisher);
+    }
+
+    boolean decompression() {
+        return decompression;
+    }
+
+    public BufferPool bufferPool() {
+        return BufferPool.DEFAULT;
+    }
+
+    public Optional<ResponseCache> cache() {
+        return Optional.ofNullable(cache);
+    }
+
+    @Override
+    public void close() {
+        connectionPool.close();
+        if (nioTransport != null) {
+            nioTransport.close();
+        }
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException ignored) {
+            }
+        }
+        synchronized (this) {
+            if (timers != null) {
+                timers.close();
+            }
+            if (ownsExecutor) {
+                ((ExecutorService) executor).shutdown();
+            }
+        }
+    }
+
+    Connection openConnection(HttpRequest request, Deadline deadline, RequestTimings timings) throws IOException {
+        String host = request.uri().getHost();
+        int port = request.port();
+        ClientEvents.ConnectionOpenEvent event = ClientEvents.beginConnectionOpen();
+        boolean connected = false;
+        try {
+            timings.connectStarted();
+            Socket socket = getSocket(host, port, connectTimeoutMillis(deadline), timings);
+            if (request.secure()) {
+                try {
+                    socket = tls().wrap(socket, host, port);
+                } catch (IOException | RuntimeException e) {
+                    socket.close();
+                    throw e;
+                }
+            }
+            Connection connection = new Connection(request.route(), socket);
+            connection.readTimeout(readTimeoutMillis(request));
+            timings.connected();
+            connected = true;
+            return connection;
+        } finally {
+            if (event != null) {
+                event.end(request.route(), request.secure(), connected);
+            }
+        }
+    }
+
+    private int connectTimeoutMillis(Deadline deadline) throws HttpTimeoutException {
+        long timeout = connectTimeoutNanos;
+        if (deadline.hasTimeout()) {
+            long remaining = deadline.remainingNanos();
+            if (remaining <= 0) {
+                throw new HttpTimeoutException("Request timed out before connecting");
+            }
+            timeout = timeout > 0 ? Math.min(timeout, remaining) : remaining;
+        }
+        return toMillis(timeout);
     }
 
-    void printHeaders(HttpHeaders headers, PrintWriter pw) {
-        for (Map.Entry<String, List<String>> headerEntry : headers.headers.entrySet()) {
-            String headerName = headerEntry.getKey();
-            List<String> headerValuesList = headerEntry.getValue();
-            String headerValue = buildHeaderValue(headerValuesList);
-            pw.print(headerName + ": " + headerValue + "\r\n");
+    Socket getSocket(String host, int port, int connectTimeoutMillis, RequestTimings timings) throws IOException {
+        InetSocketAddress address = getSocketAddress(host, port);
+        timings.resolved();
+        SocketChannel channel = SocketChannel.open();
+        try {
+            if (connectTimeoutMillis > 0) {
+                channel.socket().connect(address, connectTimeoutMillis);
+            } else {
+                channel.connect(address);
+            }
+        } catch (SocketTimeoutException e) {
+            channel.close();
+            throw new HttpConnectTimeoutException("Connect to " + address + " timed out after "
+                    + connectTimeoutMillis + " ms");
+        } catch (IOException e) {
+            channel.close();
+            throw e;
         }
+        return channel.socket();
+    }
 
-        pw.print("\r\n");
-        pw.flush();
+    InetSocketAddress getSocketAddress(String host, int port) throws UnknownHostException {
+        return new InetSocketAddress(cachingResolver.next(host), port);
     }
 
-    String buildHeaderValue(List<String> headerValuesList) {
-        String header = headerValuesList.get(0);
-        for (int i = 1; i < headerValuesList.size(); i++) {
-            header += ";" + headerValuesList.get(i);
+    synchronized TlsSockets tls() throws IOException {
+        if (tlsSockets == null) {
+            try {
+                SSLContext context = sslContext != null ? sslContext : SSLContext.getDefault();
+                tlsSockets = new TlsSockets(context, tlsProtocols, tlsCipherSuites);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("TLS is not available", e);
+            }
+        }
+        return tlsSockets;
+    }
+
+    long sendRequest(HttpRequest request, OutputStream out) throws IOException {
+        return sendRequest(request, out, Channels.newChannel(out));
+    }
+
+    long sendRequest(HttpRequest request, OutputStream out, WritableByteChannel channel) throws IOException {
+        ByteBuffer head = request.encodedHead(decompression);
+        HttpRequest.BodyPublisher bodyPublisher = request.bodyPublisher().get();
+        String method = request.method();
+        if (!method.equals("POST") && !method.equals("PUT")) {
+            return write(out, channel, head);
+        } else if (bodyPublisher instanceof HttpRequest.FilePublisher filePublisher) {
+            long written = write(out, channel, head);
+            if (channel != null) {
+                written += transferFile(filePublisher.file, channel);
+            }
+            return written;
+        } else if (bodyPublisher instanceof HttpRequest.InputStreamPublisher streamPublisher) {
+            return write(out, head) + writeChunked(streamPublisher.streamSupplier, out);
+        } else if (bodyPublisher instanceof HttpRequest.ByteBufferPublisher bufferPublisher && bufferPublisher.body != null) {
+            return write(out, channel, head, bufferPublisher.body.duplicate());
+        } else if (bodyPublisher.contentLength() != 0) {
+            return write(out, head) + new BodyWriter(out, bodyPublisher.contentLength()).write(bodyPublisher);
+        } else {
+            return write(out, channel, head);
         }
-        return header;
     }
 
-    void printBody(HttpRequest.BodyPublisher bodyPublisher, PrintWriter pw) throws IOException {
-        try (var bodyInputStream = bodyPublisher.body;
-             var bufferIn = new BufferedInputStream(bodyInputStream)) {
-            byte[] buffer = new byte[1024];
-            for (int read; (read = bufferIn.read(buffer, 0, buffer.length)) != -1;) {
-                String s = new String(buffer, 0, read);
-                pw.write(s);
-                pw.flush();
+    long write(OutputStream out, WritableByteChannel channel, ByteBuffer... buffers) throws IOException {
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            total += buffer.remaining();
+        }
+
+        if (channel instanceof GatheringByteChannel gatheringChannel) {
+            out.flush();
+            for (long remaining = total; remaining > 0; ) {
+                remaining -= gatheringChannel.write(buffers);
             }
+            return total;
+        }
+
+        for (ByteBuffer buffer : buffers) {
+            write(out, buffer);
         }
+        return total;
     }
 
-    ByteArrayOutputStream getBaosBody(HttpRequest.BodyPublisher bodyPublisher) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ByteArrayInputStream bais = (ByteArrayInputStream) bodyPublisher.body;
+    private int write(OutputStream out, ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+            return length;
+        }
 
-        byte[] data = new byte[1024];
-        for (int nRead; (nRead = bais.read(data, 0, data.length)) != -1;) {
-            baos.write(data, 0, nRead);
-            baos.flush();
+        ByteBuffer copy = BufferPool.DEFAULT.acquireHeap(Math.min(length, CHUNK_SIZE));
+        try {
+            byte[] bytes = copy.array();
+            while (buffer.hasRemaining()) {
+                int count = Math.min(buffer.remaining(), copy.capacity());
+                buffer.get(bytes, copy.arrayOffset(), count);
+                out.write(bytes, copy.arrayOffset(), count);
+            }
+        } finally {
+            BufferPool.DEFAULT.release(copy);
         }
+        return length;
+    }
 
-        return baos;
+    long writeChunked(Supplier<? extends InputStream> streamSupplier, OutputStream out) throws IOException {
+        long written = 0;
+        ByteBuffer chunk = BufferPool.DEFAULT.acquireHeap(CHUNK_SIZE);
+        try (InputStream in = streamSupplier.get()) {
+            byte[] bytes = chunk.array();
+            for (int read; (read = in.read(bytes, chunk.arrayOffset(), chunk.capacity())) != -1; ) {
+                written += writeChunk(out, bytes, chunk.arrayOffset(), read);
+            }
+        } finally {
+            BufferPool.DEFAULT.release(chunk);
+        }
+
+        out.write(LAST_CHUNK);
+        return written + LAST_CHUNK.length;
+    }
+
+    static int writeChunk(OutputStream out, byte[] chunk, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        byte[] size = Integer.toHexString(length).getBytes(StandardCharsets.US_ASCII);
+        out.write(size);
+        out.write(CRLF);
+        out.write(chunk, offset, length);
+        out.write(CRLF);
+        out.flush();
+        return size.length + length + 2 * CRLF.length;
+    }
+
+    long transferFile(Path file, WritableByteChannel channel) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            for (long position = 0; position < size; ) {
+                position += fileChannel.transferTo(position, size - position, channel);
+            }
+            return size;
+        }
     }
 
     public static class Builder {
@@ -102,7 +599,195 @@ public class HttpClient {
             httpClient = new HttpClient();
         }
 
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            if (maxConnectionsPerRoute <= 0) {
+                throw new IllegalArgumentException("Invalid max connections per route " + maxConnectionsPerRoute);
+            }
+
+            httpClient.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        public Builder idleTimeout(Duration idleTimeout) {
+            if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+                throw new IllegalArgumentException("Invalid idle timeout " + idleTimeout);
+            }
+
+            httpClient.idleTimeoutNanos = idleTimeout.toNanos();
+            return this;
+        }
+
+        public Builder executor(Executor executor) {
+            httpClient.executor = Objects.requireNonNull(executor);
+            httpClient.ownsExecutor = false;
+            return this;
+        }
+
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("Invalid max in flight requests " + maxInFlight);
+            }
+
+            httpClient.inFlight = new Semaphore(maxInFlight);
+            return this;
+        }
+
+        public Builder decompression(boolean decompression) {
+            httpClient.decompression = decompression;
+            return this;
+        }
+
+        public Builder nioEventLoops(int nioEventLoops) {
+            if (nioEventLoops <= 0) {
+                throw new IllegalArgumentException("Invalid event loop count " + nioEventLoops);
+            }
+
+            httpClient.nioEventLoops = nioEventLoops;
+            return this;
+        }
+
+        public Builder resolver(Resolver resolver) {
+            httpClient.resolver = Objects.requireNonNull(resolver);
+            return this;
+        }
+
+        public Builder dnsCacheTtl(Duration ttl, Duration negativeTtl) {
+            if (ttl.isNegative() || negativeTtl.isNegative()) {
+                throw new IllegalArgumentException("Invalid DNS cache TTL " + ttl + ", " + negativeTtl);
+            }
+
+            httpClient.dnsTtlNanos = ttl.toNanos();
+            httpClient.dnsNegativeTtlNanos = negativeTtl.toNanos();
+            return this;
+        }
+
+        public Builder sslContext(SSLContext sslContext) {
+            httpClient.sslContext = Objects.requireNonNull(sslContext);
+            return this;
+        }
+
+        public Builder tlsProtocols(String... protocols) {
+            if (protocols.length == 0) {
+                throw new IllegalArgumentException("No TLS protocols");
+            }
+
+            httpClient.tlsProtocols = protocols.clone();
+            return this;
+        }
+
+        public Builder tlsCipherSuites(String... cipherSuites) {
+            if (cipherSuites.length == 0) {
+                throw new IllegalArgumentException("No TLS cipher suites");
+            }
+
+            httpClient.tlsCipherSuites = cipherSuites.clone();
+            return this;
+        }
+
+        public Builder pipelining(int depth) {
+            if (depth <= 0) {
+                throw new IllegalArgumentException("Invalid pipelining depth " + depth);
+            }
+
+            httpClient.pipeliningDepth = depth;
+            return this;
+        }
+
+        public Builder batchConcurrency(int maxConcurrent, int maxConcurrentPerHost) {
+            if (maxConcurrent <= 0 || maxConcurrentPerHost <= 0) {
+                throw new IllegalArgumentException("Invalid batch concurrency " + maxConcurrent + ", " + maxConcurrentPerHost);
+            }
+
+            httpClient.batchConcurrency = maxConcurrent;
+            httpClient.batchConcurrencyPerHost = maxConcurrentPerHost;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            httpClient.connectTimeoutNanos = positiveNanos("connect timeout", connectTimeout);
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            httpClient.readTimeoutNanos = positiveNanos("read timeout", readTimeout);
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            httpClient.requestTimeoutNanos = positiveNanos("request timeout", requestTimeout);
+            return this;
+        }
+
+        public Builder hedging(double percentile, Duration minDelay) {
+            if (!(percentile > 0 && percentile < 100) || minDelay.isNegative()) {
+                throw new IllegalArgumentException("Invalid hedging percentile " + percentile + " or delay " + minDelay);
+            }
+
+            httpClient.hedgingPercentile = percentile;
+            httpClient.hedgingMinDelayNanos = minDelay.toNanos();
+            return this;
+        }
+
+        private static long positiveNanos(String name, Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("Invalid " + name + " " + timeout);
+            }
+            return timeout.toNanos();
+        }
+
+        public Builder listener(RequestListener listener) {
+            httpClient.listener = Objects.requireNonNull(listener);
+            return this;
+        }
+
+        public Builder cache(long maxMemoryBytes) {
+            return cache(maxMemoryBytes, null, 0);
+        }
+
+        public Builder cache(long maxMemoryBytes, Path diskDirectory, long maxDiskBytes) {
+            if (maxMemoryBytes <= 0) {
+                throw new IllegalArgumentException("Invalid cache size " + maxMemoryBytes);
+            }
+
+            if (diskDirectory != null && maxDiskBytes <= 0) {
+                throw new IllegalArgumentException("Invalid disk cache size " + maxDiskBytes);
+            }
+
+            httpClient.cacheMemoryBytes = maxMemoryBytes;
+            httpClient.cacheDirectory = diskDirectory;
+            httpClient.cacheDiskBytes = maxDiskBytes;
+            return this;
+        }
+
         public HttpClient build() {
+            httpClient.connectionPool = new ConnectionPool(httpClient.maxConnectionsPerRoute, httpClient.idleTimeoutNanos);
+            httpClient.cachingResolver = new CachingResolver(httpClient.resolver, httpClient.dnsTtlNanos,
+                    httpClient.dnsNegativeTtlNanos);
+            int batchConcurrencyPerHost = httpClient.batchConcurrencyPerHost > 0
+                    ? httpClient.batchConcurrencyPerHost
+                    : httpClient.maxConnectionsPerRoute;
+            httpClient.batchScheduler = new BatchScheduler(httpClient.batchConcurrency, batchConcurrencyPerHost);
+            if (httpClient.pipeliningDepth > 0) {
+                httpClient.pipelines = new Pipelines(httpClient.pipeliningDepth);
+            }
+            if (httpClient.hedgingPercentile > 0) {
+                httpClient.hedging = new Hedging(httpClient.hedgingPercentile, httpClient.hedgingMinDelayNanos);
+            }
+            if (httpClient.nioEventLoops > 0 && (httpClient.pipelines != null || httpClient.hedging != null)) {
+                throw new IllegalStateException("Pipelining and hedging are not supported with NIO event loops");
+            }
+            try {
+                if (httpClient.nioEventLoops > 0) {
+                    httpClient.nioTransport = new NioTransport(httpClient.nioEventLoops, httpClient.idleTimeoutNanos,
+                            httpClient.decompression, httpClient::timers);
+                }
+                if (httpClient.cacheMemoryBytes > 0) {
+                    httpClient.cache = new ResponseCache(httpClient.cacheMemoryBytes, httpClient.cacheDirectory,
+                            httpClient.cacheDiskBytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
             return httpClient;
         }
     }
@@ -0,0 +1,9 @@
+package org.example;
+
+public class HttpConnectTimeoutException extends HttpTimeoutException {
+    private static final long serialVersionUID = 1L;
+
+    public HttpConnectTimeoutException(String message) {
+        super(message);
+    }
+}
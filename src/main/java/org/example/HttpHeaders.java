@@ -1,30 +1,387 @@
 package org.example;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 class HttpHeaders {
-    Map<String, List<String>> headers = new HashMap<>();
+    static final int HOST = 0;
+    static final int ACCEPT = 1;
+    static final int ACCEPT_ENCODING = 2;
+    static final int ACCEPT_LANGUAGE = 3;
+    static final int USER_AGENT = 4;
+    static final int CONNECTION = 5;
+    static final int KEEP_ALIVE = 6;
+    static final int CONTENT_LENGTH = 7;
+    static final int CONTENT_TYPE = 8;
+    static final int CONTENT_ENCODING = 9;
+    static final int TRANSFER_ENCODING = 10;
+    static final int DATE = 11;
+    static final int SERVER = 12;
+    static final int CACHE_CONTROL = 13;
+    static final int EXPIRES = 14;
+    static final int LAST_MODIFIED = 15;
+    static final int ETAG = 16;
+    static final int IF_NONE_MATCH = 17;
+    static final int IF_MODIFIED_SINCE = 18;
+    static final int AGE = 19;
+    static final int VARY = 20;
+    static final int LOCATION = 21;
+    static final int SET_COOKIE = 22;
+    static final int COOKIE = 23;
+    static final int PRAGMA = 24;
+    static final int UPGRADE_INSECURE_REQUESTS = 25;
+
+    private static final String[] KNOWN_NAMES = {
+            "Host", "Accept", "Accept-Encoding", "Accept-Language", "User-Agent", "Connection", "Keep-Alive",
+            "Content-Length", "Content-Type", "Content-Encoding", "Transfer-Encoding", "Date", "Server",
+            "Cache-Control", "Expires", "Last-Modified", "ETag", "If-None-Match", "If-Modified-Since", "Age", "Vary",
+            "Location", "Set-Cookie", "Cookie", "Pragma", "Upgrade-Insecure-Requests"
+    };
+    private static final int UNKNOWN = -1;
+    private static final int TABLE_MASK = 127;
+    private static final int[] KNOWN_TABLE = new int[TABLE_MASK + 1];
+
+    static {
+        Arrays.fill(KNOWN_TABLE, UNKNOWN);
+        for (int ordinal = 0; ordinal < KNOWN_NAMES.length; ordinal++) {
+            int slot = hash(KNOWN_NAMES[ordinal]) & TABLE_MASK;
+            while (KNOWN_TABLE[slot] != UNKNOWN) {
+                slot = (slot + 1) & TABLE_MASK;
+            }
+            KNOWN_TABLE[slot] = ordinal;
+        }
+    }
+
+    private int size;
+    private int[] ordinals = new int[8];
+    private int[] slices = new int[8 * 4];
+    private String[] names;
+    private String[] values;
+    private byte[] data;
+    private int dataSize;
+    int version;
 
     public Map<String, List<String>> map() {
-        return Collections.unmodifiableMap(headers);
+        Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < size; i++) {
+            map.computeIfAbsent(name(i), key -> new ArrayList<>()).add(value(i));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    public Optional<String> firstValue(String name) {
+        return Optional.ofNullable(get(name));
+    }
+
+    public List<String> allValues(String name) {
+        int ordinal = ordinal(name);
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (matches(i, ordinal, name)) {
+                list.add(value(i));
+            }
+        }
+        return list;
     }
 
     public String toString() {
-        return headers.toString();
+        return map().toString();
+    }
+
+    int size() {
+        return size;
+    }
+
+    int ordinalAt(int index) {
+        return ordinals[index];
+    }
+
+    String name(int index) {
+        if (names != null && names[index] != null) {
+            return names[index];
+        }
+
+        if (ordinals[index] != UNKNOWN) {
+            return KNOWN_NAMES[ordinals[index]];
+        }
+
+        return materialize(index, 0);
+    }
+
+    String value(int index) {
+        if (values != null && values[index] != null) {
+            return values[index];
+        }
+
+        return materialize(index, 2);
+    }
+
+    String get(String name) {
+        int index = indexOf(name);
+        return index == -1 ? null : value(index);
+    }
+
+    String get(int ordinal) {
+        int index = indexOf(ordinal);
+        return index == -1 ? null : value(index);
+    }
+
+    String getLast(int ordinal) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (ordinals[i] == ordinal) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    boolean contains(int ordinal) {
+        return indexOf(ordinal) != -1;
+    }
+
+    long getLong(int ordinal) {
+        int index = indexOf(ordinal);
+        if (index == -1) {
+            return -1;
+        }
+
+        if (values != null && values[index] != null) {
+            return Long.parseLong(values[index].trim());
+        }
+
+        int from = slices[index * 4 + 2];
+        int to = slices[index * 4 + 3];
+        if (from == to || to - from > 18) {
+            throw new NumberFormatException("Invalid number");
+        }
+
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    int indexOf(String name) {
+        int ordinal = ordinal(name);
+        for (int i = 0; i < size; i++) {
+            if (matches(i, ordinal, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(int ordinal) {
+        for (int i = 0; i < size; i++) {
+            if (ordinals[i] == ordinal) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     void add(String key, String value) {
-        if (headers.containsKey(key)) {
-            headers.get(key).add(value);
-            return;
+        int index = append(ordinal(key));
+        names()[index] = key;
+        values()[index] = value;
+    }
+
+    void add(ByteBuffer buffer, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        int nameLength = nameEnd - nameStart;
+        int valueLength = valueEnd - valueStart;
+        ensureData(nameLength + valueLength);
+        buffer.get(nameStart, data, dataSize, nameLength);
+        buffer.get(valueStart, data, dataSize + nameLength, valueLength);
+
+        int index = append(ordinal(data, dataSize, dataSize + nameLength));
+        slices[index * 4] = dataSize;
+        slices[index * 4 + 1] = dataSize + nameLength;
+        slices[index * 4 + 2] = dataSize + nameLength;
+        slices[index * 4 + 3] = dataSize + nameLength + valueLength;
+        dataSize += nameLength + valueLength;
+    }
+
+    void remove(String key) {
+        int ordinal = ordinal(key);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!matches(i, ordinal, key)) {
+                move(i, kept++);
+            }
         }
 
-        replace(key, value);
+        for (int i = kept; i < size; i++) {
+            clear(i);
+        }
+
+        size = kept;
+        version++;
     }
 
     void replace(String key, String value) {
-        List<String> list = new ArrayList<>();
-        list.add(value);
-        headers.put(key, list);
+        int index = indexOf(key);
+        if (index == -1) {
+            add(key, value);
+            return;
+        }
+
+        remove(key);
+        add(key, value);
+        if (index < size - 1) {
+            rotate(index);
+        }
+    }
+
+    private int append(int ordinal) {
+        if (size == ordinals.length) {
+            int capacity = size * 2;
+            ordinals = Arrays.copyOf(ordinals, capacity);
+            slices = Arrays.copyOf(slices, capacity * 4);
+            if (names != null) {
+                names = Arrays.copyOf(names, capacity);
+            }
+            if (values != null) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+
+        ordinals[size] = ordinal;
+        version++;
+        return size++;
+    }
+
+    private void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+
+        ordinals[to] = ordinals[from];
+        System.arraycopy(slices, from * 4, slices, to * 4, 4);
+        if (names != null) {
+            names[to] = names[from];
+        }
+        if (values != null) {
+            values[to] = values[from];
+        }
+    }
+
+    private void clear(int index) {
+        if (names != null) {
+            names[index] = null;
+        }
+        if (values != null) {
+            values[index] = null;
+        }
+    }
+
+    private void rotate(int index) {
+        int last = size - 1;
+        int ordinal = ordinals[last];
+        String name = names[last];
+        String value = values[last];
+        for (int i = last; i > index; i--) {
+            move(i - 1, i);
+        }
+
+        ordinals[index] = ordinal;
+        names[index] = name;
+        values[index] = value;
+    }
+
+    private String[] names() {
+        if (names == null) {
+            names = new String[ordinals.length];
+        }
+        return names;
+    }
+
+    private String[] values() {
+        if (values == null) {
+            values = new String[ordinals.length];
+        }
+        return values;
+    }
+
+    private void ensureData(int count) {
+        if (data == null) {
+            data = new byte[Math.max(512, count)];
+        } else if (dataSize + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + count));
+        }
+    }
+
+    private String materialize(int index, int slice) {
+        int from = slices[index * 4 + slice];
+        int to = slices[index * 4 + slice + 1];
+        String s = new String(data, from, to - from, StandardCharsets.ISO_8859_1);
+        (slice == 0 ? names() : values())[index] = s;
+        return s;
+    }
+
+    private boolean matches(int index, int ordinal, String name) {
+        if (ordinal != UNKNOWN || ordinals[index] != UNKNOWN) {
+            return ordinals[index] == ordinal;
+        }
+
+        if (names != null && names[index] != null) {
+            return names[index].equalsIgnoreCase(name);
+        }
+
+        return regionEqualsIgnoreCase(name, data, slices[index * 4], slices[index * 4 + 1]);
+    }
+
+    static int ordinal(String name) {
+        for (int slot = hash(name) & TABLE_MASK; KNOWN_TABLE[slot] != UNKNOWN; slot = (slot + 1) & TABLE_MASK) {
+            if (KNOWN_NAMES[KNOWN_TABLE[slot]].equalsIgnoreCase(name)) {
+                return KNOWN_TABLE[slot];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static int ordinal(byte[] bytes, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + toLower(bytes[i] & 0xff);
+        }
+
+        for (int slot = hash & TABLE_MASK; KNOWN_TABLE[slot] != UNKNOWN; slot = (slot + 1) & TABLE_MASK) {
+            String known = KNOWN_NAMES[KNOWN_TABLE[slot]];
+            if (regionEqualsIgnoreCase(known, bytes, from, to)) {
+                return KNOWN_TABLE[slot];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean regionEqualsIgnoreCase(String s, byte[] bytes, int from, int to) {
+        if (s.length() != to - from) {
+            return false;
+        }
+
+        for (int i = from; i < to; i++) {
+            if (toLower(bytes[i] & 0xff) != toLower(s.charAt(i - from))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + toLower(name.charAt(i));
+        }
+        return hash;
+    }
+
+    private static int toLower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
     }
 }
@@ -0,0 +1,143 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+
+class HttpInput implements ReadableByteChannel {
+    static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    final ByteBuffer buffer;
+    private final ReadableByteChannel channel;
+    private long received;
+
+    HttpInput(ReadableByteChannel channel) {
+        this(ByteBuffer.allocate(DEFAULT_BUFFER_SIZE).flip(), channel);
+    }
+
+    HttpInput(ByteBuffer buffer, ReadableByteChannel channel) {
+        this.buffer = buffer;
+        this.channel = channel;
+    }
+
+    HttpInput(InputStream in) {
+        this(new StreamChannel(in));
+    }
+
+    int fill() throws IOException {
+        if (channel == null) {
+            return -1;
+        }
+
+        buffer.compact();
+        try {
+            return count(channel.read(buffer));
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private int count(int read) {
+        if (read > 0) {
+            received += read;
+        }
+        return read;
+    }
+
+    long consumed() {
+        return received - buffer.remaining();
+    }
+
+    boolean isFull() {
+        return buffer.position() == 0 && buffer.limit() == buffer.capacity();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (buffer.hasRemaining()) {
+            int count = Math.min(buffer.remaining(), dst.remaining());
+            dst.put(dst.position(), buffer, buffer.position(), count);
+            dst.position(dst.position() + count);
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        if (channel == null) {
+            return -1;
+        }
+
+        return count(channel.read(dst));
+    }
+
+    long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count) {
+            if (!buffer.hasRemaining() && fill() == -1) {
+                break;
+            }
+
+            int step = (int) Math.min(buffer.remaining(), count - skipped);
+            buffer.position(buffer.position() + step);
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel == null || channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    static class StreamChannel implements ReadableByteChannel {
+        private final InputStream in;
+        private byte[] transfer;
+        private boolean open = true;
+
+        StreamChannel(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+
+            if (dst.hasArray()) {
+                int read = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (read > 0) {
+                    dst.position(dst.position() + read);
+                }
+                return read;
+            }
+
+            if (transfer == null) {
+                transfer = new byte[DEFAULT_BUFFER_SIZE];
+            }
+
+            int read = in.read(transfer, 0, Math.min(transfer.length, dst.remaining()));
+            if (read > 0) {
+                dst.put(transfer, 0, read);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HttpMetrics implements RequestListener {
+    public enum Phase { DNS, CONNECT, WRITE, FIRST_BYTE, BODY, TOTAL }
+
+    static final int STATUS_CLASSES = 6;
+    private static final LatencyHistogram EMPTY = new LatencyHistogram();
+
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder poolHits = new LongAdder();
+    private final LongAdder poolMisses = new LongAdder();
+
+    @Override
+    public void requestCompleted(RequestTimings timings) {
+        Host host = hosts.get(timings.route());
+        if (host == null) {
+            host = hosts.computeIfAbsent(timings.route(), route -> new Host());
+        }
+
+        host.phases[Phase.DNS.ordinal()].record(timings.dnsNanos());
+        host.phases[Phase.CONNECT.ordinal()].record(timings.connectNanos());
+        host.phases[Phase.WRITE.ordinal()].record(timings.writeNanos());
+        host.phases[Phase.FIRST_BYTE.ordinal()].record(timings.firstByteNanos());
+        host.phases[Phase.BODY.ordinal()].record(timings.bodyNanos());
+        host.phases[Phase.TOTAL.ordinal()].record(timings.totalNanos());
+        host.statusClasses[statusClass(timings.statusCode())].record(timings.totalNanos());
+
+        requests.increment();
+        if (timings.statusCode() == 0) {
+            failures.increment();
+        }
+        bytesSent.add(timings.bytesSent());
+        bytesReceived.add(timings.bytesReceived());
+        if (timings.pooled()) {
+            poolHits.increment();
+        } else if (timings.opened()) {
+            poolMisses.increment();
+        }
+    }
+
+    static int statusClass(int statusCode) {
+        int statusClass = statusCode / 100;
+        return statusClass >= 1 && statusClass < STATUS_CLASSES ? statusClass : 0;
+    }
+
+    public Set<String> routes() {
+        return Collections.unmodifiableSet(hosts.keySet());
+    }
+
+    public LatencyHistogram histogram(String route, Phase phase) {
+        Host host = hosts.get(route);
+        return host == null ? EMPTY : host.phases[phase.ordinal()];
+    }
+
+    public LatencyHistogram histogram(String route, int statusClass) {
+        if (statusClass < 0 || statusClass >= STATUS_CLASSES) {
+            throw new IllegalArgumentException("Invalid status class " + statusClass);
+        }
+
+        Host host = hosts.get(route);
+        return host == null ? EMPTY : host.statusClasses[statusClass];
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long poolHits() {
+        return poolHits.sum();
+    }
+
+    public long poolMisses() {
+        return poolMisses.sum();
+    }
+
+    private static class Host {
+        final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+        final LatencyHistogram[] statusClasses = new LatencyHistogram[STATUS_CLASSES];
+
+        Host() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+            for (int i = 0; i < statusClasses.length; i++) {
+                statusClasses[i] = new LatencyHistogram();
+            }
+        }
+    }
+}
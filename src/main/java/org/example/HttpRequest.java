@@ -2,15 +2,34 @@ package org.example;
 
 import java.io.*;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.*;
 import java.util.function.Supplier;
 
 public class HttpRequest {
+    static final String DEFAULT_ACCEPT_ENCODING = "gzip, deflate";
+    private static final String REQUEST_LINE_END = " HTTP/1.1\r\n";
+    static final int HTTP_PORT = 80;
+    static final int HTTPS_PORT = 443;
+
     private String method;
     private URI uri;
     private BodyPublisher bodyPublisher = BodyPublishers.noBody();
     private final HttpHeaders headers = new HttpHeaders();
+    private ByteBuffer encodedHead;
+    private int encodedHeadVersion;
+    private String encodedMethod;
+    private URI encodedUri;
+    private boolean encodedIdentity;
+    private String route;
+    private int priority;
+    private Duration timeout;
+    private Duration readTimeout;
 
     protected HttpRequest() {}
 
@@ -23,7 +42,7 @@ public class HttpRequest {
     }
 
     public String host() {
-        return headers.headers.get("Host").get(0);
+        return headers.get(HttpHeaders.HOST);
     }
 
     public Optional<BodyPublisher> bodyPublisher() {
@@ -34,6 +53,147 @@ public class HttpRequest {
         return headers;
     }
 
+    boolean secure() {
+        return "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    int port() {
+        int port = uri.getPort();
+        if (port != -1) {
+            return port;
+        }
+        return secure() ? HTTPS_PORT : HTTP_PORT;
+    }
+
+    public int priority() {
+        return priority;
+    }
+
+    public Optional<Duration> timeout() {
+        return Optional.ofNullable(timeout);
+    }
+
+    public Optional<Duration> readTimeout() {
+        return Optional.ofNullable(readTimeout);
+    }
+
+    String route() {
+        String route = this.route;
+        if (route == null) {
+            route = (secure() ? "https://" : "http://") + uri.getHost() + ":" + port();
+            this.route = route;
+        }
+        return route;
+    }
+
+    ByteBuffer encodedHead() {
+        return encodedHead(true);
+    }
+
+    synchronized ByteBuffer encodedHead(boolean decompression) {
+        boolean identity = !decompression;
+        if (encodedHead == null || encodedHeadVersion != headers.version || encodedMethod != method || encodedUri != uri
+                || encodedIdentity != identity) {
+            encodedHead = encodeHead(identity);
+            encodedHeadVersion = headers.version;
+            encodedMethod = method;
+            encodedUri = uri;
+            encodedIdentity = identity;
+        }
+
+        return encodedHead.duplicate();
+    }
+
+    private String requestTarget() {
+        String path = uri.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+
+        String query = uri.getRawQuery();
+        return query == null ? path : path + '?' + query;
+    }
+
+    private ByteBuffer encodeHead(boolean identity) {
+        String path = requestTarget();
+        int length = method.length() + 1 + path.length() + REQUEST_LINE_END.length() + 2;
+        for (int i = 0; i < headers.size(); i++) {
+            if (isFirstOccurrence(i)) {
+                length += headers.name(i).length() + 2 + 2;
+            } else {
+                length++;
+            }
+            length += headerValue(i, identity).length();
+        }
+
+        ByteBuffer head = ByteBuffer.allocate(length);
+        putAscii(head, method);
+        head.put((byte) ' ');
+        putAscii(head, path);
+        putAscii(head, REQUEST_LINE_END);
+        for (int i = 0; i < headers.size(); i++) {
+            if (!isFirstOccurrence(i)) {
+                continue;
+            }
+
+            String name = headers.name(i);
+            putAscii(head, name);
+            head.put((byte) ':').put((byte) ' ');
+            putAscii(head, headerValue(i, identity));
+            for (int j = i + 1; j < headers.size(); j++) {
+                if (headers.name(j).equalsIgnoreCase(name)) {
+                    head.put((byte) ';');
+                    putAscii(head, headerValue(j, identity));
+                }
+            }
+            head.put((byte) '\r').put((byte) '\n');
+        }
+
+        head.put((byte) '\r').put((byte) '\n');
+        return head.flip();
+    }
+
+    private String headerValue(int index, boolean identity) {
+        String value = headers.value(index);
+        if (identity && headers.ordinalAt(index) == HttpHeaders.ACCEPT_ENCODING && value.equals(DEFAULT_ACCEPT_ENCODING)) {
+            return "identity";
+        }
+        return value;
+    }
+
+    private boolean isFirstOccurrence(int index) {
+        return headers.indexOf(headers.name(index)) == index;
+    }
+
+    private static void putAscii(ByteBuffer dst, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            dst.put(c <= 0xff ? (byte) c : (byte) '?');
+        }
+    }
+
+    HttpRequest conditional(String etag, String lastModified) {
+        HttpRequest conditional = new HttpRequest();
+        conditional.method = method;
+        conditional.uri = uri;
+        conditional.bodyPublisher = bodyPublisher;
+        conditional.priority = priority;
+        conditional.timeout = timeout;
+        conditional.readTimeout = readTimeout;
+        for (int i = 0; i < headers.size(); i++) {
+            conditional.headers.add(headers.name(i), headers.value(i));
+        }
+
+        if (etag != null) {
+            conditional.headers.replace("If-None-Match", etag);
+        }
+
+        if (lastModified != null) {
+            conditional.headers.replace("If-Modified-Since", lastModified);
+        }
+        return conditional;
+    }
+
     public static Builder newBuilder() {
         return new Builder();
     }
@@ -53,7 +213,7 @@ public class HttpRequest {
             httpRequest = new HttpRequest();
             checkUri(uri);
             httpRequest.uri = uri;
-            httpRequest.headers.add("Host", uri.getHost());
+            httpRequest.headers.add("Host", hostHeader(uri));
             addDefaultHeaders();
         }
 
@@ -69,6 +229,10 @@ public class HttpRequest {
             return httpRequest;
         }
 
+        private static String hostHeader(URI uri) {
+            return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        }
+
         private void checkUri(URI uri) {
             String uriStr = uri.toString();
             if (!uriStr.startsWith("http://") && !uriStr.startsWith("https://")) {
@@ -81,8 +245,8 @@ public class HttpRequest {
         private void addDefaultHeaders() {
             httpRequest.headers.add("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8");
             httpRequest.headers.add("Accept-Language", "en-US,en;q=0.5");
-            httpRequest.headers.add("Accept-Encoding", "gzip, deflate, br");
-            httpRequest.headers.add("Connection", "close");
+            httpRequest.headers.add("Accept-Encoding", DEFAULT_ACCEPT_ENCODING);
+            httpRequest.headers.add("Connection", "keep-alive");
             httpRequest.headers.add("Upgrade-Insecure-Requests", "1");
             httpRequest.headers.add("User-Agent", "Java-http-client/11.0.6");
         }
@@ -90,11 +254,35 @@ public class HttpRequest {
         public Builder uri(URI uri) {
             checkUri(uri);
             httpRequest.uri = uri;
-            httpRequest.headers.add("Host", uri.getHost());
+            httpRequest.route = null;
+            httpRequest.headers.add("Host", hostHeader(uri));
             addDefaultHeaders();
             return this;
         }
 
+        public Builder priority(int priority) {
+            httpRequest.priority = priority;
+            return this;
+        }
+
+        public Builder timeout(Duration timeout) {
+            if (timeout.isNegative() || timeout.isZero()) {
+                throw new IllegalArgumentException("Invalid timeout " + timeout);
+            }
+
+            httpRequest.timeout = timeout;
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            if (readTimeout.isNegative() || readTimeout.isZero()) {
+                throw new IllegalArgumentException("Invalid read timeout " + readTimeout);
+            }
+
+            httpRequest.readTimeout = readTimeout;
+            return this;
+        }
+
         public Builder GET() {
             httpRequest.method = "GET";
             return this;
@@ -116,12 +304,18 @@ public class HttpRequest {
         private Builder bodyQueryBuilder(BodyPublisher bodyPublisher, String method) {
             httpRequest.method = method;
             httpRequest.bodyPublisher = bodyPublisher;
-            httpRequest.headers.add("Content-Length", String.valueOf(bodyPublisher.contentLength));
+            if (bodyPublisher.contentLength() < 0) {
+                httpRequest.headers.remove("Content-Length");
+                httpRequest.headers.replace("Transfer-Encoding", "chunked");
+            } else {
+                httpRequest.headers.remove("Transfer-Encoding");
+                httpRequest.headers.replace("Content-Length", String.valueOf(bodyPublisher.contentLength()));
+            }
             return this;
         }
 
         public Builder setHeader(String name, String value) {
-            if (name.equals("Content-Length")) {
+            if (name.equalsIgnoreCase("Content-Length")) {
                 throw new IllegalStateException("Content-Length header is restricted");
             }
 
@@ -130,7 +324,7 @@ public class HttpRequest {
         }
 
         public Builder header(String name, String value) {
-            if (name.equals("Content-Length")) {
+            if (name.equalsIgnoreCase("Content-Length")) {
                 throw new IllegalStateException("Content-Length header is restricted");
             }
 
@@ -149,56 +343,408 @@ public class HttpRequest {
         }
     }
 
-    public static class BodyPublisher {
-        boolean isInputStream;
-        InputStream body;
-        long contentLength;
-
-        BodyPublisher(InputStream body, long contentLength, boolean isInputStream) {
-            this.body = body;
-            this.contentLength = contentLength;
-            this.isInputStream = isInputStream;
-        }
-
-        BodyPublisher(InputStream body, long contentLength) {
-            this(body, contentLength, false);
-        }
+    public interface BodyPublisher extends Flow.Publisher<ByteBuffer> {
+        long contentLength();
     }
 
     public static class BodyPublishers {
         public static BodyPublisher noBody() {
-            return new BodyPublisher(null, 0);
+            return new ByteBufferPublisher(null);
         }
 
         public static BodyPublisher ofString(String s) {
-            var bais = new ByteArrayInputStream(s.getBytes());
-            return new BodyPublisher(bais, s.length());
+            return new ByteBufferPublisher(ByteBuffer.wrap(s.getBytes()));
         }
 
         public static BodyPublisher fromFile(Path path) throws IOException {
-            File f = new File(path.toString());
-            var fis = new FileInputStream(f);
-            long contentLength = f.length();
-            return new BodyPublisher(fis, contentLength);
+            if (!Files.isRegularFile(path)) {
+                throw new FileNotFoundException(path + " not found");
+            }
+
+            return new FilePublisher(path, Files.size(path));
         }
 
-        public static BodyPublisher ofInputStream(Supplier<? extends InputStream> streamSupplier) throws IOException {
-            InputStream in = streamSupplier.get();
-            ByteArrayInputStream bais = new ByteArrayInputStream(in.readAllBytes());
-            return new BodyPublisher(bais, 0, true);
+        public static BodyPublisher ofInputStream(Supplier<? extends InputStream> streamSupplier) {
+            return new InputStreamPublisher(Objects.requireNonNull(streamSupplier));
         }
 
         public static BodyPublisher ofByteArray(byte[] buf) {
-            var bais = new ByteArrayInputStream(buf);
-            return new BodyPublisher(bais, buf.length);
+            return new ByteBufferPublisher(ByteBuffer.wrap(buf));
         }
 
         public static BodyPublisher ofByteArray(byte[] buf, int offset, int length) {
             if (offset < 0 || length - offset > buf.length) {
                 throw new IndexOutOfBoundsException("invalid indexes");
             }
-            var bais = new ByteArrayInputStream(buf, offset, length);
-            return new BodyPublisher(bais, length);
+            return new ByteBufferPublisher(ByteBuffer.wrap(buf, offset, length).slice());
+        }
+
+        public static BodyPublisher fromPublisher(Flow.Publisher<? extends ByteBuffer> publisher) {
+            return new FlowPublisher(Objects.requireNonNull(publisher), -1);
+        }
+
+        public static BodyPublisher fromPublisher(Flow.Publisher<? extends ByteBuffer> publisher, long contentLength) {
+            if (contentLength <= 0) {
+                throw new IllegalArgumentException("Invalid content length " + contentLength);
+            }
+            return new FlowPublisher(Objects.requireNonNull(publisher), contentLength);
+        }
+
+        public static BodyPublisher concat(BodyPublisher... publishers) {
+            if (publishers.length == 0) {
+                return noBody();
+            }
+
+            if (publishers.length == 1) {
+                return Objects.requireNonNull(publishers[0]);
+            }
+
+            return new ConcatPublisher(List.of(publishers));
+        }
+    }
+
+    static class ByteBufferPublisher implements BodyPublisher {
+        final ByteBuffer body;
+
+        ByteBufferPublisher(ByteBuffer body) {
+            this.body = body;
+        }
+
+        @Override
+        public long contentLength() {
+            return body == null ? 0 : body.remaining();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            ByteBuffer remaining = body == null || !body.hasRemaining() ? null : body.asReadOnlyBuffer();
+            subscriber.onSubscribe(new PullSubscription(subscriber) {
+                ByteBuffer pending = remaining;
+
+                @Override
+                ByteBuffer next() {
+                    ByteBuffer buffer = pending;
+                    pending = null;
+                    return buffer;
+                }
+            });
+        }
+    }
+
+    static class FilePublisher implements BodyPublisher {
+        final Path file;
+        private final long contentLength;
+
+        FilePublisher(Path file, long contentLength) {
+            this.file = file;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new PullSubscription(subscriber) {
+                FileChannel channel;
+
+                @Override
+                ByteBuffer next() throws IOException {
+                    if (channel == null) {
+                        channel = FileChannel.open(file, StandardOpenOption.READ);
+                    }
+
+                    ByteBuffer buffer = ByteBuffer.allocate(HttpClient.CHUNK_SIZE);
+                    return channel.read(buffer) == -1 ? null : buffer.flip();
+                }
+
+                @Override
+                void release() throws IOException {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+            });
+        }
+    }
+
+    static class InputStreamPublisher implements BodyPublisher {
+        final Supplier<? extends InputStream> streamSupplier;
+
+        InputStreamPublisher(Supplier<? extends InputStream> streamSupplier) {
+            this.streamSupplier = streamSupplier;
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new PullSubscription(subscriber) {
+                InputStream in;
+
+                @Override
+                ByteBuffer next() throws IOException {
+                    if (in == null) {
+                        in = streamSupplier.get();
+                    }
+
+                    byte[] chunk = new byte[HttpClient.CHUNK_SIZE];
+                    for (int read; (read = in.read(chunk, 0, chunk.length)) != -1; ) {
+                        if (read > 0) {
+                            return ByteBuffer.wrap(chunk, 0, read);
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                void release() throws IOException {
+                    if (in != null) {
+                        in.close();
+                    }
+                }
+            });
+        }
+    }
+
+    static class FlowPublisher implements BodyPublisher {
+        private final Flow.Publisher<? extends ByteBuffer> publisher;
+        private final long contentLength;
+
+        FlowPublisher(Flow.Publisher<? extends ByteBuffer> publisher, long contentLength) {
+            this.publisher = publisher;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            publisher.subscribe(subscriber);
+        }
+    }
+
+    static class ConcatPublisher implements BodyPublisher {
+        final List<BodyPublisher> publishers;
+        private final long contentLength;
+
+        ConcatPublisher(List<BodyPublisher> publishers) {
+            this.publishers = publishers;
+            long length = 0;
+            for (BodyPublisher publisher : publishers) {
+                long part = publisher.contentLength();
+                if (part < 0 || length < 0) {
+                    length = -1;
+                } else {
+                    length += part;
+                }
+            }
+            this.contentLength = length;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            ConcatSubscription subscription = new ConcatSubscription(subscriber, publishers.iterator());
+            subscriber.onSubscribe(subscription);
+            subscription.subscribeNext();
+        }
+    }
+
+    static class ConcatSubscription implements Flow.Subscription, Flow.Subscriber<ByteBuffer> {
+        private final Flow.Subscriber<? super ByteBuffer> downstream;
+        private final Iterator<BodyPublisher> remaining;
+        private final AtomicInteger wip = new AtomicInteger();
+        private long demand;
+        private Flow.Subscription current;
+        private boolean cancelled;
+
+        ConcatSubscription(Flow.Subscriber<? super ByteBuffer> downstream, Iterator<BodyPublisher> remaining) {
+            this.downstream = downstream;
+            this.remaining = remaining;
+        }
+
+        void subscribeNext() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            do {
+                if (idle()) {
+                    if (!remaining.hasNext()) {
+                        downstream.onComplete();
+                        return;
+                    }
+                    remaining.next().subscribe(this);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private synchronized boolean idle() {
+            return !cancelled && current == null;
+        }
+
+        @Override
+        public void request(long n) {
+            Flow.Subscription subscription;
+            synchronized (this) {
+                if (n > 0) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                subscription = current;
+            }
+
+            if (subscription != null) {
+                subscription.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription subscription;
+            synchronized (this) {
+                cancelled = true;
+                subscription = current;
+            }
+
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            long outstanding;
+            synchronized (this) {
+                if (cancelled) {
+                    subscription.cancel();
+                    return;
+                }
+                current = subscription;
+                outstanding = demand;
+            }
+
+            if (outstanding > 0) {
+                subscription.request(outstanding);
+            }
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            synchronized (this) {
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+            }
+            downstream.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            cancel();
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                current = null;
+            }
+            subscribeNext();
+        }
+    }
+
+    abstract static class PullSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private boolean done;
+        private Throwable error;
+
+        PullSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        abstract ByteBuffer next() throws IOException;
+
+        void release() throws IOException {
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Non-positive subscription request " + n);
+                cancelled = true;
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            do {
+                while (!done && !cancelled && demand.get() > 0) {
+                    ByteBuffer buffer;
+                    try {
+                        buffer = next();
+                    } catch (IOException | RuntimeException e) {
+                        terminate(e);
+                        break;
+                    }
+
+                    if (buffer == null) {
+                        terminate(null);
+                        break;
+                    }
+
+                    demand.decrementAndGet();
+                    subscriber.onNext(buffer);
+                }
+
+                if (!done && cancelled) {
+                    terminate(error);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void terminate(Throwable failure) {
+            done = true;
+            try {
+                release();
+            } catch (IOException e) {
+                if (failure == null && !cancelled) {
+                    failure = e;
+                }
+            }
+
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else if (!cancelled) {
+                subscriber.onComplete();
+            }
         }
     }
 }
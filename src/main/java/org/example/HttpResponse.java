@@ -1,54 +1,295 @@
 package org.example;
 
 import java.io.*;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.*;
+import java.util.stream.Stream;
+
+public class HttpResponse<T> implements AutoCloseable {
+    private static final byte[] HTTP_1_1 = "HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HTTP_2_0 = "HTTP/2.0".getBytes(StandardCharsets.US_ASCII);
 
-public class HttpResponse<T> {
     private String version;
     private int statusCode;
     private final HttpHeaders headers = new HttpHeaders();
+    private HttpHeaders trailers = new HttpHeaders();
+    private boolean keepAlive;
     private final T body;
+    private ByteBuffer pooledBody;
+
+    HttpResponse(HttpInput in) throws IOException {
+        readFirstLine(in);
+        readHeaders(in);
+        keepAlive = isPersistent();
+        this.body = null;
+    }
+
+    HttpResponse(HttpInput in, BodyHandler<T> bodyHandler, boolean decompress) throws IOException {
+        this(in, bodyHandler, decompress, reusable -> {
+        });
+    }
+
+    HttpResponse(HttpInput in, BodyHandler<T> bodyHandler, boolean decompress, BodyListener listener)
+            throws IOException {
+        ReadableByteChannel bodyChannel;
+        long bodyLength;
+        try {
+            readFirstLine(in);
+            readHeaders(in);
+            listener.headersRead(statusCode);
+            keepAlive = isPersistent();
+            long contentLength = contentLength();
+            ReadableByteChannel framedChannel = bodyChannel(in, contentLength);
+            boolean inflate = decompress && isCompressed();
+            bodyChannel = inflate ? inflatingChannel(framedChannel) : framedChannel;
+            bodyLength = inflate ? -1 : contentLength;
+        } catch (IOException | RuntimeException e) {
+            listener.bodyDone(false);
+            throw e;
+        }
+
+        if (bodyHandler instanceof StreamingBodyHandler) {
+            StreamedBody streamedBody = new StreamedBody(bodyChannel, keepAlive, listener);
+            try {
+                this.body = bodyHandler.readBody(streamedBody, bodyLength);
+            } catch (IOException | RuntimeException e) {
+                streamedBody.abort();
+                throw e;
+            }
+            return;
+        }
+
+        boolean reusable = false;
+        try {
+            try (ReadableByteChannel channel = bodyChannel) {
+                this.body = readBody(bodyHandler, channel, bodyLength);
+            }
+            reusable = keepAlive;
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        } finally {
+            listener.bodyDone(reusable);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T readBody(BodyHandler<T> bodyHandler, ReadableByteChannel channel, long contentLength)
+            throws IOException {
+        if (bodyHandler instanceof BodyHandlerOfByteBuffer byteBufferHandler) {
+            pooledBody = byteBufferHandler.readPooled(channel, contentLength);
+            return (T) pooledBody.asReadOnlyBuffer();
+        }
+        return bodyHandler.readBody(channel, contentLength);
+    }
+
+    HttpResponse(HttpInput in, BodyHandler<T> bodyHandler) throws IOException {
+        this(in, bodyHandler, true);
+    }
 
     HttpResponse(InputStream in, BodyHandler<T> bodyHandler) throws IOException {
-        try (var isr = new InputStreamReader(in);
-             BufferedReader reader = new BufferedReader(isr)) {
-            readFirstLine(reader);
-            readHeaders(reader);
-            String contentLengthStr = headers.headers.get("Content-Length").get(0);
-            long contentLength = Long.parseLong(contentLengthStr);
-            this.body = bodyHandler.readBody(reader, contentLength);
+        this(new HttpInput(in), bodyHandler);
+    }
+
+    private ReadableByteChannel bodyChannel(HttpInput in, long contentLength) {
+        if (contentLength < 0 && chunked()) {
+            ChunkedChannel chunkedChannel = new ChunkedChannel(in);
+            trailers = chunkedChannel.decoder.trailers;
+            return chunkedChannel;
         }
+
+        return new FixedLengthChannel(in, contentLength);
     }
 
-    void readFirstLine(BufferedReader reader) throws IOException {
-        String firstLine = reader.readLine();
-        String[] firstLineParts = firstLine.split(" ");
-        if (firstLineParts.length > 3) {
-            throw new IOException("Invalid first line");
+    boolean chunked() {
+        String lastValue = headers.getLast(HttpHeaders.TRANSFER_ENCODING);
+        if (lastValue == null) {
+            return false;
         }
 
-        version = firstLineParts[0];
-        if (!version.equals("HTTP/1.1") && !version.equals("HTTP/2.0")) {
-            throw new IOException("Invalid protocol");
+        int lastComma = lastValue.lastIndexOf(',');
+        return lastValue.substring(lastComma + 1).trim().equalsIgnoreCase("chunked");
+    }
+
+    private String contentEncoding() {
+        String contentEncoding = headers.get(HttpHeaders.CONTENT_ENCODING);
+        return contentEncoding == null ? null : contentEncoding.trim();
+    }
+
+    private boolean isCompressed() {
+        String contentEncoding = contentEncoding();
+        return contentEncoding != null && InflatingChannel.isSupported(contentEncoding);
+    }
+
+    private ReadableByteChannel inflatingChannel(ReadableByteChannel framedChannel) {
+        boolean gzip = !contentEncoding().equalsIgnoreCase("deflate");
+        headers.remove("Content-Encoding");
+        headers.remove("Content-Length");
+        return new InflatingChannel(framedChannel, gzip);
+    }
+
+    long contentLength() throws IOException {
+        if (statusCode < 200 || statusCode == 204 || statusCode == 304) {
+            return 0;
+        }
+
+        if (!headers.contains(HttpHeaders.CONTENT_LENGTH) || headers.contains(HttpHeaders.TRANSFER_ENCODING)) {
+            return -1;
         }
 
         try {
-            statusCode = Integer.parseInt(firstLineParts[1]);
+            return headers.getLong(HttpHeaders.CONTENT_LENGTH);
         } catch (NumberFormatException e) {
+            throw new IOException("Invalid content length");
+        }
+    }
+
+    boolean keepAlive() {
+        return keepAlive;
+    }
+
+    private boolean isPersistent() throws IOException {
+        if (!version.equals("HTTP/1.1") || (contentLength() < 0 && !chunked())) {
+            return false;
+        }
+
+        String connection = headers.get(HttpHeaders.CONNECTION);
+        return connection == null || !connection.equalsIgnoreCase("close");
+    }
+
+    static int nextLineEnd(HttpInput in) throws IOException {
+        ByteBuffer buffer = in.buffer;
+        int scanned = 0;
+        while (true) {
+            for (int i = buffer.position() + scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+
+            scanned = buffer.remaining();
+            if (in.isFull()) {
+                throw new IOException("Response head line too long");
+            }
+
+            if (in.fill() == -1) {
+                return -1;
+            }
+        }
+    }
+
+    private static int trimLineEnd(ByteBuffer buffer, int start, int lineEnd) {
+        return lineEnd > start && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(ByteBuffer buffer, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(from + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void readFirstLine(HttpInput in) throws IOException {
+        int lineEnd = nextLineEnd(in);
+        if (lineEnd == -1) {
+            throw new EOFException("Connection closed before response");
+        }
+
+        ByteBuffer buffer = in.buffer;
+        int start = buffer.position();
+        int end = trimLineEnd(buffer, start, lineEnd);
+        int versionEnd = indexOf(buffer, (byte) ' ', start, end);
+        int statusEnd = versionEnd == -1 ? -1 : indexOf(buffer, (byte) ' ', versionEnd + 1, end);
+
+        int versionTo = versionEnd == -1 ? end : versionEnd;
+        if (regionEquals(buffer, start, versionTo, HTTP_1_1)) {
+            version = "HTTP/1.1";
+        } else if (regionEquals(buffer, start, versionTo, HTTP_2_0)) {
+            version = "HTTP/2.0";
+        } else {
+            throw new IOException("Invalid protocol");
+        }
+
+        int statusFrom = versionTo + 1;
+        int statusTo = statusEnd == -1 ? end : statusEnd;
+        if (versionEnd == -1 || statusFrom >= statusTo || statusTo - statusFrom > 3) {
             throw new IOException("Invalid status code");
         }
+
+        int code = 0;
+        for (int i = statusFrom; i < statusTo; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Invalid status code");
+            }
+            code = code * 10 + digit;
+        }
+
+        statusCode = code;
+        buffer.position(lineEnd + 1);
     }
 
-    void readHeaders(BufferedReader reader) throws IOException {
-        for (String line = reader.readLine(); line != null && !line.isBlank(); line = reader.readLine()) {
-            String[] parts = line.split(": ");
-            if (parts.length != 2) {
+    void readHeaders(HttpInput in) throws IOException {
+        ByteBuffer buffer = in.buffer;
+        for (int lineEnd = nextLineEnd(in); lineEnd != -1; lineEnd = nextLineEnd(in)) {
+            int start = buffer.position();
+            int end = trimLineEnd(buffer, start, lineEnd);
+            if (isBlank(buffer, start, end)) {
+                buffer.position(lineEnd + 1);
+                return;
+            }
+
+            int colon = indexOf(buffer, (byte) ':', start, end);
+            if (colon <= start) {
                 throw new IOException("Invalid headers");
             }
-            String headerName = parts[0];
-            String headerValue = parts[1];
-            headers.add(headerName, headerValue);
+
+            int valueStart = colon + 1;
+            while (valueStart < end && isWhitespace(buffer.get(valueStart))) {
+                valueStart++;
+            }
+
+            int valueEnd = end;
+            while (valueEnd > valueStart && isWhitespace(buffer.get(valueEnd - 1))) {
+                valueEnd--;
+            }
+
+            headers.add(buffer, start, colon, valueStart, valueEnd);
+            buffer.position(lineEnd + 1);
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isBlank(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isWhitespace(buffer.get(i))) {
+                return false;
+            }
         }
+        return true;
     }
 
     public int statusCode() {
@@ -67,52 +308,434 @@ public class HttpResponse<T> {
         return headers;
     }
 
+    public HttpHeaders trailers() {
+        return trailers;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (pooledBody != null) {
+            BufferPool.DEFAULT.release(pooledBody);
+            pooledBody = null;
+        }
+    }
+
     public static class BodyHandlers {
         public static BodyHandler<String> ofString() {
             return new BodyHandlerOfString();
         }
 
+        public static BodyHandler<byte[]> ofByteArray() {
+            return new BodyHandlerOfByteArray();
+        }
+
+        public static BodyHandler<ByteBuffer> ofByteBuffer() {
+            return new BodyHandlerOfByteBuffer();
+        }
+
+        public static BodyHandler<Void> discarding() {
+            return new BodyHandlerDiscarding();
+        }
+
         public static BodyHandler<Path> ofFile(Path file) {
             return new BodyHandlerOfFile(file);
         }
+
+        public static BodyHandler<Path> ofFile(Path file, FsyncPolicy fsyncPolicy, boolean preallocate) {
+            return new BodyHandlerOfFile(file, fsyncPolicy, preallocate);
+        }
+
+        public static BodyHandler<InputStream> ofInputStream() {
+            return new BodyHandlerOfInputStream();
+        }
+
+        public static BodyHandler<Stream<String>> ofLines() {
+            return new BodyHandlerOfLines();
+        }
+
+        public static BodyHandler<Void> fromSubscriber(Flow.Subscriber<? super List<ByteBuffer>> subscriber) {
+            return new BodyHandlerFromSubscriber(Objects.requireNonNull(subscriber));
+        }
+    }
+
+    public enum FsyncPolicy {
+        NONE,
+        DATA,
+        DATA_AND_METADATA
     }
 
     public interface BodyHandler<T> {
-        T readBody(BufferedReader br, long contentLength) throws IOException;
+        T readBody(ReadableByteChannel body, long contentLength) throws IOException;
+    }
+
+    interface StreamingBodyHandler<T> extends BodyHandler<T> {
+    }
+
+    interface BodyListener {
+        default void headersRead(int statusCode) {
+        }
+
+        void bodyDone(boolean reusable);
+    }
+
+    static class StreamedBody implements ReadableByteChannel {
+        private final ReadableByteChannel source;
+        private final boolean keepAlive;
+        private final BodyListener listener;
+        private boolean eof;
+        private boolean open = true;
+        private boolean done;
+
+        StreamedBody(ReadableByteChannel source, boolean keepAlive, BodyListener listener) {
+            this.source = source;
+            this.keepAlive = keepAlive;
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new IOException("Body channel is closed");
+            }
+
+            if (eof) {
+                return -1;
+            }
+
+            int read;
+            try {
+                read = source.read(dst);
+            } catch (IOException | RuntimeException e) {
+                abort();
+                throw e;
+            }
+
+            if (read == -1) {
+                eof = true;
+                finish();
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() {
+            open = false;
+            if (eof) {
+                finish();
+            } else {
+                abort();
+            }
+        }
+
+        synchronized void abort() {
+            open = false;
+            if (done) {
+                return;
+            }
+
+            done = true;
+            listener.bodyDone(false);
+            try {
+                source.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void finish() {
+            if (done) {
+                return;
+            }
+
+            done = true;
+            boolean reusable = keepAlive;
+            try {
+                source.close();
+            } catch (IOException e) {
+                reusable = false;
+            }
+            listener.bodyDone(reusable);
+        }
+    }
+
+    static byte[] readAllBytes(ReadableByteChannel body, long contentLength) throws IOException {
+        if (contentLength < 0 || contentLength > Integer.MAX_VALUE - 8) {
+            return Channels.newInputStream(body).readAllBytes();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) contentLength);
+        while (buffer.hasRemaining() && body.read(buffer) != -1);
+        return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
     }
 
     static class BodyHandlerOfString implements BodyHandler<String> {
 
         @Override
-        public String readBody(BufferedReader br, long contentLength) throws IOException {
-            StringBuilder sb = new StringBuilder();
-            for (long redBytes = 0; br.ready() && redBytes < contentLength; redBytes++) {
-                char ch = (char) br.read();
-                sb.append(ch);
+        public String readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            return new String(readAllBytes(body, contentLength), StandardCharsets.UTF_8);
+        }
+    }
+
+    static class BodyHandlerOfByteArray implements BodyHandler<byte[]> {
+
+        @Override
+        public byte[] readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            return readAllBytes(body, contentLength);
+        }
+    }
+
+    static class BodyHandlerOfByteBuffer implements BodyHandler<ByteBuffer> {
+        private static final int INITIAL_CAPACITY = 8 * 1024;
+
+        @Override
+        public ByteBuffer readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            ByteBuffer pooled = readPooled(body, contentLength);
+            try {
+                return ByteBuffer.allocateDirect(pooled.remaining()).put(pooled).flip().asReadOnlyBuffer();
+            } finally {
+                BufferPool.DEFAULT.release(pooled);
             }
+        }
 
-            return sb.toString();
+        ByteBuffer readPooled(ReadableByteChannel body, long contentLength) throws IOException {
+            if (contentLength > Integer.MAX_VALUE - 8) {
+                throw new IOException("Response body of " + contentLength + " bytes does not fit in a ByteBuffer");
+            }
+
+            BufferPool.Output out = BufferPool.DEFAULT.new Output(contentLength >= 0 ? (int) contentLength
+                    : INITIAL_CAPACITY);
+            try {
+                for (long received = 0, read; received != contentLength && (read = out.readFrom(body)) != -1; ) {
+                    received += read;
+                }
+            } catch (IOException | RuntimeException e) {
+                out.discard();
+                throw e;
+            }
+            return out.toBuffer();
+        }
+    }
+
+    static class BodyHandlerDiscarding implements BodyHandler<Void> {
+        private static final int BUFFER_SIZE = 8 * 1024;
+
+        @Override
+        public Void readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            ByteBuffer buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+            try {
+                while (body.read(buffer) != -1) {
+                    buffer.clear();
+                }
+            } finally {
+                BufferPool.DEFAULT.release(buffer);
+            }
+            return null;
         }
     }
 
     static class BodyHandlerOfFile implements BodyHandler<Path> {
+        private static final int BUFFER_SIZE = 256 * 1024;
+
         Path path;
+        FsyncPolicy fsyncPolicy;
+        boolean preallocate;
 
         BodyHandlerOfFile(Path path) {
+            this(path, FsyncPolicy.NONE, false);
+        }
+
+        BodyHandlerOfFile(Path path, FsyncPolicy fsyncPolicy, boolean preallocate) {
             this.path = path;
+            this.fsyncPolicy = Objects.requireNonNull(fsyncPolicy);
+            this.preallocate = preallocate;
         }
 
         @Override
-        public Path readBody(BufferedReader br, long contentLength) throws IOException {
-            try (var fileWriter = new FileWriter(path.toString());
-                 var pw = new PrintWriter(fileWriter)) {
-                for (long redBytes = 0; br.ready() && redBytes < contentLength; redBytes++) {
-                    char ch = (char) br.read();
-                    pw.print(ch);
+        public Path readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                boolean preallocated = preallocate && contentLength > 0;
+                if (preallocated) {
+                    file.write(ByteBuffer.allocate(1), contentLength - 1);
+                }
+
+                long written = transfer(body, file);
+                if (preallocated && written < contentLength) {
+                    file.truncate(written);
+                }
+
+                switch (fsyncPolicy) {
+                    case DATA -> file.force(false);
+                    case DATA_AND_METADATA -> file.force(true);
+                    default -> {
+                    }
                 }
             }
 
             return path;
         }
+
+        private long transfer(ReadableByteChannel body, FileChannel file) throws IOException {
+            ByteBuffer buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+            try {
+                long position = 0;
+                for (boolean eof = false; !eof; ) {
+                    while (buffer.hasRemaining() && !(eof = body.read(buffer) == -1));
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        position += file.write(buffer, position);
+                    }
+                    buffer.clear();
+                }
+                return position;
+            } finally {
+                BufferPool.DEFAULT.release(buffer);
+            }
+        }
+    }
+
+    static class BodyHandlerOfInputStream implements StreamingBodyHandler<InputStream> {
+
+        @Override
+        public InputStream readBody(ReadableByteChannel body, long contentLength) {
+            return Channels.newInputStream(body);
+        }
+    }
+
+    static class BodyHandlerOfLines implements StreamingBodyHandler<Stream<String>> {
+
+        @Override
+        public Stream<String> readBody(ReadableByteChannel body, long contentLength) {
+            BufferedReader reader = new BufferedReader(Channels.newReader(body, StandardCharsets.UTF_8));
+            return reader.lines().onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    static class BodyHandlerFromSubscriber implements StreamingBodyHandler<Void> {
+        private final Flow.Subscriber<? super List<ByteBuffer>> subscriber;
+
+        BodyHandlerFromSubscriber(Flow.Subscriber<? super List<ByteBuffer>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public Void readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            BodySubscription subscription = new BodySubscription();
+            try (body) {
+                subscriber.onSubscribe(subscription);
+                while (subscription.awaitDemand()) {
+                    ByteBuffer buffer = ByteBuffer.allocate(HttpInput.DEFAULT_BUFFER_SIZE);
+                    int read = body.read(buffer);
+                    if (read == -1) {
+                        subscription.cancel();
+                        subscriber.onComplete();
+                        return null;
+                    }
+
+                    subscriber.onNext(List.of(buffer.flip()));
+                }
+
+                Throwable error = subscription.error();
+                if (error != null) {
+                    subscriber.onError(error);
+                }
+            } catch (IOException e) {
+                if (subscription.terminate()) {
+                    subscriber.onError(e);
+                }
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (subscription.terminate()) {
+                    subscriber.onError(e);
+                }
+                throw new InterruptedIOException("Interrupted while waiting for demand");
+            }
+            return null;
+        }
+    }
+
+    static class BodySubscription implements Flow.Subscription {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition();
+        private long demand;
+        private boolean cancelled;
+        private Throwable error;
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Non-positive subscription request " + n);
+                    cancelled = true;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            terminate();
+        }
+
+        boolean terminate() {
+            lock.lock();
+            try {
+                boolean wasCancelled = cancelled;
+                cancelled = true;
+                demanded.signalAll();
+                return !wasCancelled;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean awaitDemand() throws InterruptedException {
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled) {
+                    demanded.await();
+                }
+
+                if (cancelled) {
+                    return false;
+                }
+
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Throwable error() {
+            lock.lock();
+            try {
+                return error;
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 }
@@ -0,0 +1,43 @@
+package org.example;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+class InflaterPool {
+    static final int MAX_POOLED = 32;
+
+    private static final Queue<Inflater> RAW = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> ZLIB = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger RAW_SIZE = new AtomicInteger();
+    private static final AtomicInteger ZLIB_SIZE = new AtomicInteger();
+
+    private InflaterPool() {}
+
+    static Inflater acquire(boolean nowrap) {
+        Inflater inflater = (nowrap ? RAW : ZLIB).poll();
+        if (inflater == null) {
+            return new Inflater(nowrap);
+        }
+
+        (nowrap ? RAW_SIZE : ZLIB_SIZE).decrementAndGet();
+        return inflater;
+    }
+
+    static void release(Inflater inflater, boolean nowrap) {
+        AtomicInteger size = nowrap ? RAW_SIZE : ZLIB_SIZE;
+        if (size.incrementAndGet() > MAX_POOLED) {
+            size.decrementAndGet();
+            inflater.end();
+            return;
+        }
+
+        inflater.reset();
+        (nowrap ? RAW : ZLIB).add(inflater);
+    }
+
+    static int pooled(boolean nowrap) {
+        return (nowrap ? RAW_SIZE : ZLIB_SIZE).get();
+    }
+}
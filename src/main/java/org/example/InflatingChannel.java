@@ -0,0 +1,212 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.*;
+
+class InflatingChannel implements ReadableByteChannel {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final ReadableByteChannel source;
+    private final boolean gzip;
+    private final ByteBuffer input = BufferPool.DEFAULT.acquire(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN).flip();
+    private final CRC32 crc = new CRC32();
+    private Inflater inflater;
+    private boolean nowrap;
+    private boolean finished;
+    private boolean open = true;
+
+    InflatingChannel(ReadableByteChannel source, boolean gzip) {
+        this.source = source;
+        this.gzip = gzip;
+    }
+
+    static boolean isSupported(String contentEncoding) {
+        return contentEncoding.equalsIgnoreCase("gzip") || contentEncoding.equalsIgnoreCase("x-gzip")
+                || contentEncoding.equalsIgnoreCase("deflate");
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new IOException("Body channel is closed");
+        }
+
+        if (finished) {
+            return -1;
+        }
+
+        if (inflater == null) {
+            start();
+        }
+
+        while (true) {
+            int start = dst.position();
+            int inflated;
+            try {
+                inflated = inflater.inflate(dst);
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+
+            if (inflated > 0) {
+                if (gzip) {
+                    crc.update(dst.duplicate().limit(dst.position()).position(start));
+                }
+                return inflated;
+            }
+
+            if (inflater.finished()) {
+                finish();
+                return -1;
+            }
+
+            if (inflater.needsDictionary()) {
+                throw new ZipException("Deflate dictionary is not supported");
+            }
+
+            if (!dst.hasRemaining()) {
+                return 0;
+            }
+
+            if (inflater.needsInput()) {
+                if (!fill()) {
+                    throw new EOFException("Compressed body is truncated");
+                }
+                inflater.setInput(input);
+            }
+        }
+    }
+
+    private void start() throws IOException {
+        if (gzip) {
+            readGzipHeader();
+            nowrap = true;
+        } else {
+            nowrap = !isZlibHeader();
+        }
+
+        inflater = InflaterPool.acquire(nowrap);
+        inflater.setInput(input);
+    }
+
+    private boolean isZlibHeader() throws IOException {
+        require(2);
+        int cmf = input.get(input.position()) & 0xff;
+        int flg = input.get(input.position() + 1) & 0xff;
+        return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    private void readGzipHeader() throws IOException {
+        require(10);
+        if ((input.getShort() & 0xffff) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+
+        if (input.get() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+
+        int flags = input.get() & 0xff;
+        input.position(input.position() + 6);
+        if ((flags & FEXTRA) != 0) {
+            require(2);
+            skip(input.getShort() & 0xffff);
+        }
+
+        if ((flags & FNAME) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FCOMMENT) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+    }
+
+    private void finish() throws IOException {
+        if (gzip) {
+            require(8);
+            long expectedCrc = input.getInt() & 0xffffffffL;
+            long expectedSize = input.getInt() & 0xffffffffL;
+            if (expectedCrc != crc.getValue()) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+
+            if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        finished = true;
+        releaseInflater();
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        do {
+            require(1);
+        } while (input.get() != 0);
+    }
+
+    private void skip(int count) throws IOException {
+        while (count > 0) {
+            require(1);
+            int step = Math.min(count, input.remaining());
+            input.position(input.position() + step);
+            count -= step;
+        }
+    }
+
+    private void require(int count) throws IOException {
+        while (input.remaining() < count) {
+            if (!fill()) {
+                throw new EOFException("Compressed body is truncated");
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        input.compact();
+        try {
+            int read;
+            while ((read = source.read(input)) == 0 && input.hasRemaining());
+            return read > 0;
+        } finally {
+            input.flip();
+        }
+    }
+
+    private void releaseInflater() {
+        if (inflater != null) {
+            InflaterPool.release(inflater, nowrap);
+            inflater = null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+
+        open = false;
+        releaseInflater();
+        BufferPool.DEFAULT.release(input);
+        source.close();
+    }
+}
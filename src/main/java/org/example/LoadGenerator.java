@@ -0,0 +1,354 @@
+package org.example;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+class LoadGenerator {
+    static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+    static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    static final String USAGE = """
+            Usage: Main [options]
+              --url URL                target of the default GET request, and base for relative template targets
+              --template FILE          request templates separated by lines starting with ###
+              --local SIZE[,LATENCY]   start a loopback stand-in server with SIZE-byte responses and LATENCY ms delay
+              --rps RATE               open-loop mode: start RATE requests per second regardless of responses
+              --concurrency N          closed-loop mode: N workers sending back to back (default 1)
+              --duration DURATION      run time such as 500ms, 30s or 2m (default 10s)
+              --max-connections N      connections per route
+              --max-in-flight N        requests in flight across the client
+            """;
+
+    private final HttpClient client;
+    private final List<HttpRequest> requests;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    LoadGenerator(HttpClient client, List<HttpRequest> requests) {
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("No requests to send");
+        }
+
+        this.client = client;
+        this.requests = List.copyOf(requests);
+    }
+
+    static Report run(Options options) throws IOException, InterruptedException {
+        LoopbackServer server = options.localPayloadSize >= 0
+                ? new LoopbackServer(options.localPayloadSize, options.localLatency)
+                : null;
+        try {
+            URI base = server != null ? server.uri("/") : options.url;
+            List<HttpRequest> requests = options.template != null
+                    ? parseTemplates(Files.readString(options.template), base)
+                    : List.of(HttpRequest.newBuilder(base).build());
+
+            HttpMetrics metrics = new HttpMetrics();
+            HttpClient.Builder builder = HttpClient.newBuilder().listener(metrics);
+            if (options.maxConnections > 0) {
+                builder.maxConnectionsPerRoute(options.maxConnections);
+            }
+            if (options.maxInFlight > 0) {
+                builder.maxInFlight(options.maxInFlight);
+            }
+
+            try (HttpClient client = builder.build()) {
+                LoadGenerator generator = new LoadGenerator(client, requests);
+                Report report = options.rps > 0
+                        ? generator.openLoop(options.rps, options.duration)
+                        : generator.closedLoop(options.concurrency, options.duration);
+                report.metrics = metrics;
+                return report;
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    Report openLoop(double rps, Duration duration) throws InterruptedException {
+        long total = (long) Math.ceil(duration.toNanos() * rps / TimeUnit.SECONDS.toNanos(1));
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid request count " + total);
+        }
+
+        CountDownLatch done = new CountDownLatch((int) total);
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intended = start + (long) (i * TimeUnit.SECONDS.toNanos(1) / rps);
+            for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+
+            client.sendAsync(request(i), HttpResponse.BodyHandlers.discarding()).whenComplete((response, t) -> {
+                record(intended, response, t);
+                done.countDown();
+            });
+        }
+
+        done.await(DRAIN_TIMEOUT.toNanos(), TimeUnit.NANOSECONDS);
+        return report("open loop, " + rps + " req/s", total, System.nanoTime() - start);
+    }
+
+    Report closedLoop(int concurrency, Duration duration) throws InterruptedException {
+        AtomicLong sent = new AtomicLong();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        ExecutorService workers = HttpClient.defaultExecutor();
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                while (System.nanoTime() - end < 0) {
+                    HttpRequest request = request(sent.getAndIncrement());
+                    long requestStart = System.nanoTime();
+                    try {
+                        record(requestStart, client.send(request, HttpResponse.BodyHandlers.discarding()), null);
+                    } catch (IOException | RuntimeException e) {
+                        record(requestStart, null, e);
+                    }
+                }
+            });
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(duration.plus(DRAIN_TIMEOUT).toNanos(), TimeUnit.NANOSECONDS);
+        return report("closed loop, " + concurrency + " workers", sent.get(), System.nanoTime() - start);
+    }
+
+    private HttpRequest request(long index) {
+        return requests.get((int) (index % requests.size()));
+    }
+
+    private void record(long startNanos, HttpResponse<?> response, Throwable t) {
+        latency.record(System.nanoTime() - startNanos);
+        if (t != null) {
+            errors.increment();
+        } else {
+            statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+        }
+    }
+
+    private Report report(String mode, long scheduled, long elapsedNanos) {
+        Report report = new Report();
+        report.mode = mode;
+        report.scheduled = scheduled;
+        report.completed = latency.count();
+        report.errors = errors.sum();
+        report.elapsedNanos = elapsedNanos;
+        report.latency = latency;
+        statuses.forEach((status, count) -> report.statuses.put(status, count.sum()));
+        return report;
+    }
+
+    static List<HttpRequest> parseTemplates(String text, URI base) {
+        List<HttpRequest> templates = new ArrayList<>();
+        List<String> block = new ArrayList<>();
+        for (String line : text.split("\r?\n", -1)) {
+            if (line.startsWith("###")) {
+                addTemplate(templates, block, base);
+                block.clear();
+            } else {
+                block.add(line);
+            }
+        }
+        addTemplate(templates, block, base);
+
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("Invalid template: no requests");
+        }
+        return templates;
+    }
+
+    private static void addTemplate(List<HttpRequest> templates, List<String> lines, URI base) {
+        int i = 0;
+        while (i < lines.size() && lines.get(i).isBlank()) {
+            i++;
+        }
+        if (i == lines.size()) {
+            return;
+        }
+
+        String[] requestLine = lines.get(i++).trim().split("\\s+");
+        if (requestLine.length != 2) {
+            throw new IllegalArgumentException("Invalid template request line " + String.join(" ", requestLine));
+        }
+
+        URI target = URI.create(requestLine[1]);
+        if (!target.isAbsolute()) {
+            if (base == null) {
+                throw new IllegalArgumentException("Invalid template target " + target + " without --url or --local");
+            }
+            target = base.resolve(target);
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(target);
+        for (; i < lines.size() && !lines.get(i).isBlank(); i++) {
+            String header = lines.get(i);
+            int colon = header.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Invalid template header " + header);
+            }
+
+            String name = header.substring(0, colon).trim();
+            if (!name.equalsIgnoreCase("Content-Length")) {
+                builder.setHeader(name, header.substring(colon + 1).trim());
+            }
+        }
+
+        String body = i < lines.size() ? String.join("\n", lines.subList(i + 1, lines.size())).stripTrailing() : "";
+        switch (requestLine[0]) {
+            case "GET" -> builder.GET();
+            case "DELETE" -> builder.DELETE();
+            case "POST" -> builder.POST(HttpRequest.BodyPublishers.ofString(body));
+            case "PUT" -> builder.PUT(HttpRequest.BodyPublishers.ofString(body));
+            default -> throw new IllegalArgumentException("Invalid template method " + requestLine[0]);
+        }
+        templates.add(builder.build());
+    }
+
+    static Duration parseDuration(String value) {
+        try {
+            Duration duration;
+            if (value.endsWith("ms")) {
+                duration = Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+            } else if (value.endsWith("s")) {
+                duration = Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+            } else if (value.endsWith("m")) {
+                duration = Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+            } else {
+                duration = Duration.parse(value);
+            }
+
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException("Invalid duration " + value);
+            }
+            return duration;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid duration " + value, e);
+        }
+    }
+
+    static class Options {
+        URI url;
+        Path template;
+        int localPayloadSize = -1;
+        Duration localLatency = Duration.ZERO;
+        double rps;
+        int concurrency = 1;
+        Duration duration = Duration.ofSeconds(10);
+        int maxConnections;
+        int maxInFlight;
+        boolean help;
+
+        static Options parse(String... args) {
+            Options options = new Options();
+            boolean concurrencySet = false;
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (option.equals("--help") || option.equals("-h")) {
+                    options.help = true;
+                    continue;
+                }
+
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+
+                String value = args[++i];
+                switch (option) {
+                    case "--url" -> options.url = URI.create(value);
+                    case "--template" -> options.template = Path.of(value);
+                    case "--local" -> options.local(value);
+                    case "--rps" -> options.rps = positive(option, Double.parseDouble(value));
+                    case "--concurrency" -> {
+                        options.concurrency = (int) positive(option, Integer.parseInt(value));
+                        concurrencySet = true;
+                    }
+                    case "--duration" -> options.duration = parseDuration(value);
+                    case "--max-connections" -> options.maxConnections = (int) positive(option, Integer.parseInt(value));
+                    case "--max-in-flight" -> options.maxInFlight = (int) positive(option, Integer.parseInt(value));
+                    default -> throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+
+            if (options.help) {
+                return options;
+            }
+            if (options.rps > 0 && concurrencySet) {
+                throw new IllegalArgumentException("Invalid options: --rps and --concurrency are exclusive");
+            }
+            if (options.url != null && options.localPayloadSize >= 0) {
+                throw new IllegalArgumentException("Invalid options: --url and --local are exclusive");
+            }
+            if (options.url == null && options.template == null && options.localPayloadSize < 0) {
+                throw new IllegalArgumentException("Missing target: use --url, --template or --local");
+            }
+            return options;
+        }
+
+        private void local(String value) {
+            String[] parts = value.split(",", 2);
+            localPayloadSize = Integer.parseInt(parts[0].trim());
+            if (localPayloadSize < 0) {
+                throw new IllegalArgumentException("Invalid local payload size " + localPayloadSize);
+            }
+            if (parts.length == 2) {
+                localLatency = Duration.ofMillis(Long.parseLong(parts[1].trim()));
+                if (localLatency.isNegative()) {
+                    throw new IllegalArgumentException("Invalid local latency " + localLatency);
+                }
+            }
+        }
+
+        private static double positive(String option, double value) {
+            if (!(value > 0)) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+            return value;
+        }
+    }
+
+    static class Report {
+        String mode;
+        long scheduled;
+        long completed;
+        long errors;
+        long elapsedNanos;
+        LatencyHistogram latency;
+        final Map<Integer, Long> statuses = new TreeMap<>();
+        HttpMetrics metrics;
+
+        double throughput() {
+            return completed * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        void print(PrintStream out) {
+            out.printf("Mode:         %s%n", mode);
+            out.printf("Requests:     %d completed (%d errors), %d unfinished%n", completed, errors, scheduled - completed);
+            out.printf("Elapsed:      %.2f s%n", elapsedNanos / 1e9);
+            out.printf("Throughput:   %.1f req/s%n", throughput());
+            StringBuilder percentiles = new StringBuilder();
+            for (double percentile : PERCENTILES) {
+                percentiles.append(String.format("p%s %.3f  ", format(percentile), latency.valueAtPercentile(percentile) / 1e6));
+            }
+            out.printf("Latency (ms): %smax %.3f  mean %.3f%n", percentiles, latency.max() / 1e6, latency.mean() / 1e6);
+            StringJoiner statusCounts = new StringJoiner(", ");
+            statuses.forEach((status, count) -> statusCounts.add(status + "=" + count));
+            out.printf("Status:       %s%n", statusCounts);
+            if (metrics != null) {
+                out.printf("Connections:  %d opened, %d reused%n", metrics.poolMisses(), metrics.poolHits());
+                out.printf("Bytes:        %d sent, %d received%n", metrics.bytesSent(), metrics.bytesReceived());
+            }
+        }
+
+        private static String format(double percentile) {
+            return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+        }
+    }
+}
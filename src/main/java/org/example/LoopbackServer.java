@@ -0,0 +1,187 @@
+package org.example;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+class LoopbackServer implements Closeable {
+    static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final byte[] response;
+    private final long latencyNanos;
+    private final AtomicLong requests = new AtomicLong();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "loopback-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    LoopbackServer(int payloadSize, Duration latency) throws IOException {
+        this(0, payloadSize, latency);
+    }
+
+    LoopbackServer(int port, int payloadSize, Duration latency) throws IOException {
+        if (payloadSize < 0 || latency.isNegative()) {
+            throw new IllegalArgumentException("Invalid loopback payload size " + payloadSize + " or latency " + latency);
+        }
+
+        this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        this.response = response(payloadSize);
+        this.latencyNanos = latency.toNanos();
+        executor.execute(this::acceptLoop);
+    }
+
+    static byte[] response(int payloadSize) {
+        byte[] head = ("HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nContent-Length: " + payloadSize
+                + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] response = Arrays.copyOf(head, head.length + payloadSize);
+        Arrays.fill(response, head.length, response.length, (byte) 'x');
+        return response;
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + port() + path);
+    }
+
+    long requestCount() {
+        return requests.get();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        byte[] line = new byte[MAX_LINE_LENGTH];
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = socket.getOutputStream()) {
+            socket.setTcpNoDelay(true);
+            while (readRequest(in, line)) {
+                requests.incrementAndGet();
+                if (latencyNanos > 0) {
+                    Thread.sleep(latencyNanos / 1_000_000, (int) (latencyNanos % 1_000_000));
+                }
+                out.write(response);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    static boolean readRequest(InputStream in, byte[] line) throws IOException {
+        if (readLine(in, line) < 0) {
+            return false;
+        }
+
+        long contentLength = 0;
+        boolean chunked = false;
+        for (int length = readLine(in, line); length != 0; length = readLine(in, line)) {
+            if (length < 0) {
+                throw new EOFException("Unexpected end of request head");
+            }
+
+            if (startsWithIgnoreCase(line, length, "content-length:")) {
+                contentLength = parseLong(line, "content-length:".length(), length, 10);
+            } else if (startsWithIgnoreCase(line, length, "transfer-encoding:")) {
+                chunked = startsWithIgnoreCase(line, length, "transfer-encoding: chunked");
+            }
+        }
+
+        if (!chunked) {
+            in.skipNBytes(contentLength);
+            return true;
+        }
+
+        for (long size = chunkSize(in, line); size > 0; size = chunkSize(in, line)) {
+            in.skipNBytes(size);
+            readLine(in, line);
+        }
+        int trailer;
+        do {
+            trailer = readLine(in, line);
+        } while (trailer > 0);
+        return true;
+    }
+
+    private static long chunkSize(InputStream in, byte[] line) throws IOException {
+        return parseLong(line, 0, readLine(in, line), 16);
+    }
+
+    private static int readLine(InputStream in, byte[] line) throws IOException {
+        int length = 0;
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b == -1) {
+                return length == 0 ? -1 : length;
+            }
+            if (length == line.length) {
+                throw new IOException("Request line too long");
+            }
+            line[length++] = (byte) b;
+        }
+        return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] line, int length, String prefix) {
+        if (length < prefix.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toLowerCase(line[i]) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseLong(byte[] line, int from, int to, int radix) throws IOException {
+        long value = 0;
+        boolean digits = false;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(line[i], radix);
+            if (digit >= 0) {
+                value = value * radix + digit;
+                digits = true;
+            } else if (digits || (line[i] != ' ' && line[i] != '\t')) {
+                break;
+            }
+        }
+
+        if (!digits) {
+            throw new IOException("Invalid number in request");
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+}
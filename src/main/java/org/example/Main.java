@@ -1,26 +1,24 @@
 package org.example;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 
 public class Main {
-    public static void main(String[] args) throws URISyntaxException, IOException {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(new URI("https://postman-echo.com/post"))
-                .headers("Content-Type", "image/x-png")
-                .POST(HttpRequest.BodyPublishers.fromFile(
-                        Paths.get("src/Slide15.png")))
-                .build();
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadGenerator.Options options;
+        try {
+            options = LoadGenerator.Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadGenerator.USAGE);
+            System.exit(2);
+            return;
+        }
 
-        HttpResponse<Path> response = HttpClient.newBuilder().build()
-                .send(request, HttpResponse.BodyHandlers.ofFile(Paths.get("src/result.png")));
-                       // .send(request, HttpResponse.BodyHandlers.ofString());
-        System.out.println(request.headers());
-        System.out.println(response.headers());
-        System.out.println(response.body());
-        System.out.println(response.statusCode());
+        if (options.help) {
+            System.out.print(LoadGenerator.USAGE);
+            return;
+        }
+
+        LoadGenerator.run(options).print(System.out);
     }
 }
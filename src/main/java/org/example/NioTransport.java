@@ -0,0 +1,689 @@
+package org.example;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+class NioTransport implements Closeable {
+    private static final int INITIAL_RESPONSE_BUFFER_SIZE = 4096;
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+    private static final int READ_CHUNK_SIZE = 16 * 1024;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final System.Logger LOGGER = System.getLogger(NioTransport.class.getName());
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+    private final Map<String, Deque<NioConnection>> idleConnections = new ConcurrentHashMap<>();
+    private final long idleTimeoutNanos;
+    private final boolean decompress;
+    private final Supplier<TimerWheel> timers;
+    private volatile boolean closed;
+
+    NioTransport(int eventLoopCount, long idleTimeoutNanos, boolean decompress, Supplier<TimerWheel> timers)
+            throws IOException {
+        if (eventLoopCount <= 0) {
+            throw new IllegalArgumentException("Invalid event loop count " + eventLoopCount);
+        }
+
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.decompress = decompress;
+        this.timers = timers;
+        eventLoops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop("http-nio-" + i);
+        }
+    }
+
+    <T> CompletableFuture<HttpResponse<T>> send(String route, InetSocketAddress address, ByteBuffer request,
+                                                Path file, boolean replayable, boolean reusable,
+                                                long connectTimeoutNanos, long readTimeoutNanos,
+                                                HttpResponse.BodyHandler<T> bodyHandler, Executor completionExecutor) {
+        Exchange<T> exchange = new Exchange<>(route, address, request, file, replayable, reusable, decompress,
+                connectTimeoutNanos, readTimeoutNanos, bodyHandler, completionExecutor);
+        if (closed) {
+            exchange.fail(new IOException("Transport is closed"));
+            return exchange.future;
+        }
+
+        start(exchange);
+        return exchange.future;
+    }
+
+    private void start(Exchange<?> exchange) {
+        NioConnection connection = pollIdle(exchange.route);
+        if (connection != null) {
+            connection.eventLoop.execute(() -> connection.begin(exchange));
+            return;
+        }
+
+        EventLoop eventLoop = eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+        eventLoop.execute(() -> eventLoop.connect(exchange));
+    }
+
+    private NioConnection pollIdle(String route) {
+        Deque<NioConnection> idle = idleConnections.get(route);
+        if (idle == null) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        for (NioConnection connection = idle.pollFirst(); connection != null; connection = idle.pollFirst()) {
+            if (now - connection.lastUsedNanos <= idleTimeoutNanos && connection.channel.isOpen()) {
+                return connection;
+            }
+            connection.eventLoop.execute(connection::close);
+        }
+        return null;
+    }
+
+    int idleCount(String route) {
+        Deque<NioConnection> idle = idleConnections.get(route);
+        return idle == null ? 0 : idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        idleConnections.clear();
+    }
+
+    private static class Exchange<T> {
+        final String route;
+        final InetSocketAddress address;
+        ByteBuffer request;
+        final Path file;
+        FileChannel fileChannel;
+        long filePosition;
+        final boolean replayable;
+        final boolean reusable;
+        final boolean decompress;
+        final long connectTimeoutNanos;
+        final long readTimeoutNanos;
+        final HttpResponse.BodyHandler<T> bodyHandler;
+        final Executor completionExecutor;
+        final CompletableFuture<HttpResponse<T>> future = new CompletableFuture<>();
+        ByteBuffer response = BufferPool.DEFAULT.acquire(INITIAL_RESPONSE_BUFFER_SIZE);
+        int scanned;
+        int headEnd = -1;
+        long contentLength;
+        long bodyRemaining;
+        ChunkedDecoder chunkedDecoder;
+        ResponsePipe pipe;
+        NioConnection connection;
+        boolean keepAlive;
+        boolean framed;
+        boolean retried;
+        TimerWheel.Timeout timeout;
+        long lastReadNanos;
+
+        Exchange(String route, InetSocketAddress address, ByteBuffer request, Path file, boolean replayable,
+                 boolean reusable, boolean decompress, long connectTimeoutNanos, long readTimeoutNanos,
+                 HttpResponse.BodyHandler<T> bodyHandler, Executor completionExecutor) {
+            this.route = route;
+            this.address = address;
+            this.request = request;
+            this.file = file;
+            this.replayable = replayable;
+            this.reusable = reusable;
+            this.decompress = decompress;
+            this.connectTimeoutNanos = connectTimeoutNanos;
+            this.readTimeoutNanos = readTimeoutNanos;
+            this.bodyHandler = bodyHandler;
+            this.completionExecutor = completionExecutor;
+            future.whenComplete((response, t) -> {
+                if (t instanceof CancellationException) {
+                    cancel();
+                }
+            });
+        }
+
+        boolean writeFile(SocketChannel channel) throws IOException {
+            if (file == null) {
+                return true;
+            }
+
+            if (fileChannel == null) {
+                fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+            }
+
+            long size = fileChannel.size();
+            filePosition += fileChannel.transferTo(filePosition, size - filePosition, channel);
+            if (filePosition < size) {
+                return false;
+            }
+
+            closeFile();
+            return true;
+        }
+
+        void closeFile() {
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (IOException ignored) {
+                }
+                fileChannel = null;
+            }
+        }
+
+        void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+        }
+
+        void reset() {
+            cancelTimeout();
+            closeFile();
+            filePosition = 0;
+            request.rewind();
+            response.clear();
+            scanned = 0;
+            headEnd = -1;
+            chunkedDecoder = null;
+        }
+
+        void ensureCapacity() throws IOException {
+            if (response.hasRemaining()) {
+                return;
+            }
+
+            int capacity = (int) Math.min(MAX_HEAD_SIZE, 2L * response.capacity());
+            if (capacity <= response.capacity()) {
+                throw new IOException("Response head exceeds " + MAX_HEAD_SIZE + " bytes");
+            }
+
+            ByteBuffer grown = BufferPool.DEFAULT.acquire(capacity);
+            grown.put(response.flip());
+            BufferPool.DEFAULT.release(response);
+            response = grown;
+        }
+
+        void startBody(Runnable resume, Runnable abandon) throws IOException {
+            ByteBuffer received = response.flip();
+            response = null;
+            pipe = new ResponsePipe(resume, abandon);
+            pipe.offer(received);
+            bodyRemaining = contentLength;
+            frame(received.duplicate().position(headEnd));
+        }
+
+        void deliver() {
+            try {
+                completionExecutor.execute(() -> {
+                    try {
+                        HttpResponse<T> result = new HttpResponse<>(new HttpInput(pipe), bodyHandler, decompress,
+                                reusable -> pipe.close());
+                        if (!future.complete(result)) {
+                            result.close();
+                        }
+                    } catch (Throwable t) {
+                        pipe.close();
+                        future.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pipe.close();
+                future.completeExceptionally(e);
+            }
+        }
+
+        void frame(ByteBuffer body) throws IOException {
+            if (chunkedDecoder != null) {
+                framed = chunkedDecoder.decode(body, null);
+                if (framed && body.hasRemaining()) {
+                    keepAlive = false;
+                }
+            } else if (contentLength >= 0) {
+                if (body.remaining() > bodyRemaining) {
+                    keepAlive = false;
+                }
+                bodyRemaining -= Math.min(bodyRemaining, body.remaining());
+                framed = bodyRemaining == 0;
+            }
+        }
+
+        boolean findHeadEnd() throws IOException {
+            ByteBuffer bytes = response;
+            int end = response.position();
+            for (int i = Math.max(scanned, 1); i < end; i++) {
+                if (bytes.get(i) != '\n') {
+                    continue;
+                }
+
+                if (bytes.get(i - 1) == '\n') {
+                    headEnd = i + 1;
+                } else if (i >= 3 && bytes.get(i - 1) == '\r' && bytes.get(i - 2) == '\n' && bytes.get(i - 3) == '\r') {
+                    headEnd = i + 1;
+                } else {
+                    continue;
+                }
+
+                HttpResponse<?> head = new HttpResponse<>(new HttpInput(response.duplicate().flip().limit(headEnd), null));
+                contentLength = head.contentLength();
+                keepAlive = reusable && head.keepAlive();
+                if (contentLength < 0 && head.chunked()) {
+                    chunkedDecoder = new ChunkedDecoder();
+                }
+                return true;
+            }
+
+            scanned = end;
+            return false;
+        }
+
+        void complete() {
+            BufferPool.DEFAULT.release(request);
+            request = null;
+            pipe.finish();
+        }
+
+        void fail(Throwable t) {
+            cancelTimeout();
+            closeFile();
+            if (request != null) {
+                BufferPool.DEFAULT.release(request);
+                request = null;
+            }
+            if (response != null) {
+                BufferPool.DEFAULT.release(response);
+                response = null;
+            }
+            if (pipe != null) {
+                pipe.fail(t instanceof IOException e ? e : new IOException(t));
+            }
+            if (future.completeExceptionally(t) && pipe != null) {
+                pipe.close();
+            }
+        }
+
+        private void cancel() {
+            NioConnection current = connection;
+            if (current != null) {
+                current.eventLoop.execute(() -> {
+                    if (current.exchange == this) {
+                        current.fail(new IOException("Exchange was cancelled"));
+                    }
+                });
+            }
+        }
+    }
+
+    private class NioConnection {
+        final SocketChannel channel;
+        final EventLoop eventLoop;
+        final String route;
+        SelectionKey key;
+        Exchange<?> exchange;
+        long lastUsedNanos;
+        boolean reused;
+
+        NioConnection(SocketChannel channel, EventLoop eventLoop, String route) {
+            this.channel = channel;
+            this.eventLoop = eventLoop;
+            this.route = route;
+        }
+
+        void begin(Exchange<?> exchange) {
+            if (!channel.isOpen()) {
+                start(exchange);
+                return;
+            }
+
+            this.exchange = exchange;
+            exchange.connection = this;
+            reused = true;
+            try {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } catch (RuntimeException e) {
+                abort(exchange, e);
+            }
+        }
+
+        void finishConnect() throws IOException {
+            if (channel.finishConnect()) {
+                exchange.cancelTimeout();
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        }
+
+        void scheduleConnectTimeout() {
+            Exchange<?> connecting = exchange;
+            if (connecting.connectTimeoutNanos > 0) {
+                connecting.timeout = timers.get().schedule(connecting.connectTimeoutNanos,
+                        () -> eventLoop.execute(() -> connectTimedOut(connecting)));
+            }
+        }
+
+        private void connectTimedOut(Exchange<?> connecting) {
+            if (exchange == connecting && !channel.isConnected()) {
+                fail(new HttpConnectTimeoutException("Connect to " + connecting.address + " timed out after "
+                        + HttpClient.toMillis(connecting.connectTimeoutNanos) + " ms"));
+            }
+        }
+
+        private void scheduleReadTimeout(Exchange<?> reading, long delayNanos) {
+            if (reading.readTimeoutNanos > 0) {
+                reading.timeout = timers.get().schedule(delayNanos,
+                        () -> eventLoop.execute(() -> readTimedOut(reading)));
+            }
+        }
+
+        private void readTimedOut(Exchange<?> reading) {
+            if (exchange != reading) {
+                return;
+            }
+
+            long remaining = reading.readTimeoutNanos - (System.nanoTime() - reading.lastReadNanos);
+            if (remaining > 0 || key.interestOps() == 0) {
+                scheduleReadTimeout(reading, remaining > 0 ? remaining : reading.readTimeoutNanos);
+                return;
+            }
+            fail(new HttpTimeoutException("Read timed out after " + HttpClient.toMillis(reading.readTimeoutNanos)
+                    + " ms"));
+        }
+
+        void write() throws IOException {
+            if (exchange.request.hasRemaining()) {
+                channel.write(exchange.request);
+            }
+
+            if (!exchange.request.hasRemaining() && exchange.writeFile(channel)) {
+                key.interestOps(SelectionKey.OP_READ);
+                exchange.lastReadNanos = System.nanoTime();
+                scheduleReadTimeout(exchange, exchange.readTimeoutNanos);
+            }
+        }
+
+        void read() throws IOException {
+            if (exchange == null) {
+                idleRead();
+                return;
+            }
+
+            Exchange<?> current = exchange;
+            if (current.pipe == null) {
+                current.ensureCapacity();
+                if (channel.read(current.response) == -1) {
+                    endOfStream();
+                    return;
+                }
+                current.lastReadNanos = System.nanoTime();
+                if (!current.findHeadEnd()) {
+                    return;
+                }
+                current.startBody(() -> eventLoop.execute(() -> resume(current)),
+                        () -> eventLoop.execute(() -> abandon(current)));
+                if (current.framed) {
+                    finish(null);
+                }
+                current.deliver();
+            } else {
+                ByteBuffer chunk = BufferPool.DEFAULT.acquire(READ_CHUNK_SIZE);
+                int read;
+                try {
+                    read = channel.read(chunk);
+                } catch (IOException e) {
+                    BufferPool.DEFAULT.release(chunk);
+                    throw e;
+                }
+                if (read <= 0) {
+                    BufferPool.DEFAULT.release(chunk);
+                    if (read == -1) {
+                        endOfStream();
+                    }
+                    return;
+                }
+                current.lastReadNanos = System.nanoTime();
+                try {
+                    current.frame(chunk.flip().duplicate());
+                } catch (IOException | RuntimeException e) {
+                    BufferPool.DEFAULT.release(chunk);
+                    throw e;
+                }
+                if (current.framed) {
+                    finish(chunk);
+                } else if (!current.pipe.offer(chunk)) {
+                    key.interestOps(0);
+                }
+            }
+        }
+
+        private void resume(Exchange<?> paused) {
+            if (exchange == paused && key.isValid()) {
+                paused.lastReadNanos = System.nanoTime();
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void abandon(Exchange<?> abandoned) {
+            if (exchange == abandoned) {
+                fail(new IOException("Response body was abandoned"));
+            }
+        }
+
+        private void idleRead() throws IOException {
+            ByteBuffer probe = ByteBuffer.allocate(1);
+            if (channel.read(probe) != 0) {
+                Deque<NioConnection> idle = idleConnections.get(route);
+                if (idle != null) {
+                    idle.remove(this);
+                }
+                close();
+            }
+        }
+
+        private void endOfStream() throws IOException {
+            if (exchange.pipe != null && exchange.contentLength < 0 && exchange.chunkedDecoder == null) {
+                exchange.keepAlive = false;
+                finish(null);
+                return;
+            }
+
+            fail(new EOFException("Connection closed before end of response"));
+        }
+
+        private void finish(ByteBuffer last) {
+            Exchange<?> finished = exchange;
+            exchange = null;
+            finished.cancelTimeout();
+            if (finished.keepAlive && !closed) {
+                lastUsedNanos = System.nanoTime();
+                key.interestOps(SelectionKey.OP_READ);
+                idleConnections.computeIfAbsent(route, r -> new ConcurrentLinkedDeque<>()).addFirst(this);
+            } else {
+                close();
+            }
+            if (last != null) {
+                finished.pipe.offer(last);
+            }
+            finished.complete();
+        }
+
+        void fail(IOException e) {
+            Exchange<?> failed = exchange;
+            exchange = null;
+            close();
+            if (failed == null) {
+                return;
+            }
+
+            failed.closeFile();
+            boolean nothingReceived = failed.pipe == null && failed.response.position() == 0;
+            if (reused && nothingReceived && failed.replayable && !failed.retried && !closed && !failed.future.isDone()
+                    && !(e instanceof HttpTimeoutException)) {
+                failed.retried = true;
+                failed.reset();
+                start(failed);
+                return;
+            }
+            failed.fail(e);
+        }
+
+        void abort(Exchange<?> current, RuntimeException e) {
+            if (exchange == current) {
+                exchange = null;
+            }
+            Deque<NioConnection> idle = idleConnections.get(route);
+            if (idle != null) {
+                idle.remove(this);
+            }
+            close();
+            if (current != null) {
+                current.fail(e);
+            }
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private class EventLoop implements Runnable {
+        final Selector selector;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final Thread thread;
+        long lastSweepNanos = System.nanoTime();
+
+        EventLoop(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void connect(Exchange<?> exchange) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                NioConnection connection = new NioConnection(channel, this, exchange.route);
+                connection.exchange = exchange;
+                exchange.connection = connection;
+                if (channel.connect(exchange.address)) {
+                    connection.key = channel.register(selector, SelectionKey.OP_WRITE, connection);
+                } else {
+                    connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                    connection.scheduleConnectTimeout();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                exchange.fail(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select(SWEEP_INTERVAL_NANOS / 1_000_000);
+                    for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            LOGGER.log(System.Logger.Level.WARNING, "Event loop task failed", e);
+                        }
+                    }
+
+                    if (!selector.isOpen()) {
+                        return;
+                    }
+                    processSelectedKeys();
+                    sweepIdle();
+                } catch (IOException | ClosedSelectorException e) {
+                    return;
+                }
+            }
+        }
+
+        private void processSelectedKeys() {
+            Set<SelectionKey> selectedKeys = selector.selectedKeys();
+            for (SelectionKey key : selectedKeys) {
+                NioConnection connection = (NioConnection) key.attachment();
+                Exchange<?> current = connection.exchange;
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isConnectable()) {
+                        connection.finishConnect();
+                    } else if (key.isWritable()) {
+                        connection.write();
+                    } else if (key.isReadable()) {
+                        connection.read();
+                    }
+                } catch (IOException e) {
+                    connection.fail(e);
+                } catch (CancelledKeyException ignored) {
+                } catch (RuntimeException e) {
+                    connection.abort(current, e);
+                }
+            }
+            selectedKeys.clear();
+        }
+
+        private void sweepIdle() {
+            long now = System.nanoTime();
+            if (now - lastSweepNanos < SWEEP_INTERVAL_NANOS) {
+                return;
+            }
+
+            lastSweepNanos = now;
+            for (SelectionKey key : selector.keys()) {
+                NioConnection connection = (NioConnection) key.attachment();
+                if (connection.exchange == null && now - connection.lastUsedNanos > idleTimeoutNanos) {
+                    Deque<NioConnection> idle = idleConnections.get(connection.route);
+                    if (idle != null && idle.remove(connection)) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+
+        void shutdown() {
+            execute(() -> {
+                for (SelectionKey key : selector.keys()) {
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (connection.exchange != null) {
+                        connection.exchange.fail(new IOException("Transport is closed"));
+                    }
+                    connection.close();
+                }
+
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.example;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+class Pipelines {
+    static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int depth;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    Pipelines(int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("Invalid pipelining depth " + depth);
+        }
+
+        this.depth = depth;
+    }
+
+    static boolean isEligible(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<?> bodyHandler) {
+        return client.isReplayable(request)
+                && request.bodyPublisher().get().contentLength() == 0
+                && !client.closeRequested(request)
+                && client.requestTimeoutNanos(request) == 0
+                && request.readTimeout().isEmpty()
+                && !(bodyHandler instanceof HttpResponse.StreamingBodyHandler);
+    }
+
+    <T> HttpResponse<T> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Route route = routes.computeIfAbsent(request.route(), key -> new Route());
+            RequestTimings timings = RequestTimings.start(client.listener, request);
+            Pipeline pipeline;
+            try {
+                pipeline = join(client, route, request, timings);
+            } catch (IOException | RuntimeException e) {
+                timings.finish();
+                throw e;
+            }
+
+            try {
+                return pipeline.exchange(client, request, bodyHandler, timings);
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                leave(client, route, pipeline);
+            }
+        }
+    }
+
+    int pipelineCount(String routeKey) {
+        Route route = routes.get(routeKey);
+        if (route == null) {
+            return 0;
+        }
+
+        route.lock.lock();
+        try {
+            return route.pipelines.size();
+        } finally {
+            route.lock.unlock();
+        }
+    }
+
+    private Pipeline join(HttpClient client, Route route, HttpRequest request, RequestTimings timings)
+            throws IOException {
+        route.lock.lock();
+        try {
+            while (true) {
+                for (Pipeline pipeline : route.pipelines) {
+                    if (!pipeline.broken && pipeline.outstanding < depth) {
+                        pipeline.outstanding++;
+                        timings.pooled(true);
+                        return pipeline;
+                    }
+                }
+
+                long version = route.version;
+                Connection connection;
+                route.lock.unlock();
+                try {
+                    connection = client.connectionPool.tryAcquire(request.route(), () -> client.openConnection(request, Deadline.NONE, timings));
+                } finally {
+                    route.lock.lock();
+                }
+
+                if (connection != null) {
+                    timings.pooled(connection.reused);
+                    Pipeline pipeline = new Pipeline(connection);
+                    pipeline.outstanding = 1;
+                    route.pipelines.add(pipeline);
+                    return pipeline;
+                }
+
+                if (version == route.version) {
+                    route.changed.awaitNanos(RETRY_WAIT_NANOS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a pipelined connection");
+        } finally {
+            route.lock.unlock();
+        }
+    }
+
+    private void leave(HttpClient client, Route route, Pipeline pipeline) {
+        boolean retire;
+        route.lock.lock();
+        try {
+            retire = --pipeline.outstanding == 0;
+            if (retire) {
+                route.pipelines.remove(pipeline);
+            }
+            route.version++;
+            route.changed.signalAll();
+        } finally {
+            route.lock.unlock();
+        }
+
+        if (retire) {
+            if (pipeline.broken) {
+                client.connectionPool.discard(pipeline.connection);
+            } else {
+                client.connectionPool.release(pipeline.connection);
+            }
+        }
+    }
+
+    private static class Route {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition changed = lock.newCondition();
+        final List<Pipeline> pipelines = new ArrayList<>();
+        long version;
+    }
+
+    static class Pipeline {
+        final Connection connection;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition turn = lock.newCondition();
+        private long nextTicket;
+        private long serving;
+        int outstanding;
+        volatile boolean broken;
+
+        Pipeline(Connection connection) {
+            this.connection = connection;
+        }
+
+        <T> HttpResponse<T> exchange(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                                     RequestTimings timings) throws IOException {
+            long ticket;
+            try {
+                ticket = write(client, request, timings);
+            } catch (IOException | RuntimeException e) {
+                timings.finish();
+                throw e;
+            }
+
+            try {
+                try {
+                    awaitTurn(ticket);
+                } catch (IOException e) {
+                    timings.finish();
+                    throw e;
+                }
+                return new HttpResponse<>(connection.input, bodyHandler, client.decompression(),
+                        timings.track(connection.input, reusable -> {
+                            if (!reusable) {
+                                breakPipeline();
+                            }
+                        }));
+            } catch (IOException | RuntimeException e) {
+                breakPipeline();
+                throw e;
+            } finally {
+                lock.lock();
+                try {
+                    serving = ticket + 1;
+                    turn.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private long write(HttpClient client, HttpRequest request, RequestTimings timings) throws IOException {
+            writeLock.lock();
+            try {
+                if (broken) {
+                    throw new IOException("Pipelined connection is broken");
+                }
+
+                long ticket;
+                lock.lock();
+                try {
+                    ticket = nextTicket++;
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    timings.writeStarted();
+                    long sent = client.sendRequest(request, connection.out, connection.channel);
+                    connection.out.flush();
+                    timings.written(sent);
+                } catch (IOException | RuntimeException e) {
+                    breakPipeline();
+                    throw e;
+                }
+                return ticket;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void awaitTurn(long ticket) throws IOException {
+            lock.lock();
+            try {
+                while (serving != ticket && !broken) {
+                    turn.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                breakPipeline();
+                throw new InterruptedIOException("Interrupted while waiting for a pipelined response");
+            } finally {
+                lock.unlock();
+            }
+
+            if (broken) {
+                throw new IOException("Pipelined connection broke before the response arrived");
+            }
+        }
+
+        private void breakPipeline() {
+            lock.lock();
+            try {
+                broken = true;
+                turn.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
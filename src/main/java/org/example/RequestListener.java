@@ -0,0 +1,5 @@
+package org.example;
+
+public interface RequestListener {
+    void requestCompleted(RequestTimings timings);
+}
@@ -0,0 +1,231 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class RequestTimings {
+    static final int POOL_SIZE = 256;
+    private static final int POOL_PROBES = 8;
+    private static final AtomicReferenceArray<RequestTimings> POOL = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private final Completion completion = new Completion();
+    private RequestListener listener;
+    private String route;
+    private String method;
+    private int statusCode;
+    private boolean pooled;
+    private long startNanos;
+    private long connectStartNanos;
+    private long resolvedNanos;
+    private long connectedNanos;
+    private long writeStartNanos;
+    private long writtenNanos;
+    private long headersNanos;
+    private long endNanos;
+    private long bytesSent;
+    private long bytesReceived;
+    private HttpInput input;
+    private long inputMark;
+    private long headersMark;
+    private HttpResponse.BodyListener delegate;
+    private ClientEvents.RequestEvent requestEvent;
+    private ClientEvents.ResponseHeadersEvent headersEvent;
+    private ClientEvents.ResponseBodyEvent bodyEvent;
+
+    private RequestTimings() {
+    }
+
+    static RequestTimings start(RequestListener listener, HttpRequest request) {
+        RequestTimings timings = poll();
+        timings.listener = listener;
+        timings.route = request.route();
+        timings.method = request.method();
+        timings.startNanos = System.nanoTime();
+        timings.requestEvent = ClientEvents.beginRequest();
+        return timings;
+    }
+
+    public String route() {
+        return route;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public boolean pooled() {
+        return pooled;
+    }
+
+    public long dnsNanos() {
+        return connectStartNanos == 0 || resolvedNanos == 0 ? -1 : resolvedNanos - connectStartNanos;
+    }
+
+    public long connectNanos() {
+        if (connectedNanos == 0) {
+            return -1;
+        }
+        return connectedNanos - (resolvedNanos != 0 ? resolvedNanos : connectStartNanos);
+    }
+
+    public long writeNanos() {
+        return writtenNanos == 0 ? -1 : writtenNanos - writeStartNanos;
+    }
+
+    public long firstByteNanos() {
+        return headersNanos == 0 || writtenNanos == 0 ? -1 : headersNanos - writtenNanos;
+    }
+
+    public long bodyNanos() {
+        return headersNanos == 0 ? -1 : endNanos - headersNanos;
+    }
+
+    public long totalNanos() {
+        return endNanos - startNanos;
+    }
+
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    public long bytesReceived() {
+        return bytesReceived;
+    }
+
+    void connectStarted() {
+        connectStartNanos = System.nanoTime();
+        resolvedNanos = 0;
+        connectedNanos = 0;
+    }
+
+    void resolved() {
+        resolvedNanos = System.nanoTime();
+    }
+
+    void connected() {
+        connectedNanos = System.nanoTime();
+    }
+
+    void pooled(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    void writeStarted() {
+        writeStartNanos = System.nanoTime();
+    }
+
+    void written(long bytes) {
+        writtenNanos = System.nanoTime();
+        bytesSent = bytes;
+    }
+
+    HttpResponse.BodyListener track(HttpInput input, HttpResponse.BodyListener delegate) {
+        this.input = input;
+        this.inputMark = input.consumed();
+        this.delegate = delegate;
+        this.headersEvent = ClientEvents.beginResponseHeaders();
+        return completion;
+    }
+
+    void headersRead(int statusCode) {
+        headersNanos = System.nanoTime();
+        this.statusCode = statusCode;
+    }
+
+    void sent(long bytes) {
+        bytesSent = bytes;
+    }
+
+    void completed(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    boolean opened() {
+        return connectStartNanos != 0;
+    }
+
+    void finish() {
+        endNanos = System.nanoTime();
+        try {
+            if (requestEvent != null) {
+                requestEvent.end(this);
+            }
+            if (listener != null) {
+                listener.requestCompleted(this);
+            }
+        } catch (RuntimeException ignored) {
+        } finally {
+            recycle();
+        }
+    }
+
+    private static int firstSlot() {
+        return (int) (Thread.currentThread().getId() * POOL_PROBES) & (POOL_SIZE - 1);
+    }
+
+    private static RequestTimings poll() {
+        int slot = firstSlot();
+        for (int i = 0; i < POOL_PROBES; i++) {
+            RequestTimings timings = POOL.getAndSet((slot + i) & (POOL_SIZE - 1), null);
+            if (timings != null) {
+                return timings;
+            }
+        }
+        return new RequestTimings();
+    }
+
+    private void recycle() {
+        listener = null;
+        route = null;
+        method = null;
+        statusCode = 0;
+        pooled = false;
+        startNanos = connectStartNanos = resolvedNanos = connectedNanos = 0;
+        writeStartNanos = writtenNanos = headersNanos = endNanos = 0;
+        bytesSent = bytesReceived = 0;
+        input = null;
+        inputMark = 0;
+        headersMark = 0;
+        delegate = null;
+        requestEvent = null;
+        headersEvent = null;
+        bodyEvent = null;
+
+        int slot = firstSlot();
+        for (int i = 0; i < POOL_PROBES; i++) {
+            if (POOL.compareAndSet((slot + i) & (POOL_SIZE - 1), null, this)) {
+                return;
+            }
+        }
+    }
+
+    private class Completion implements HttpResponse.BodyListener {
+        @Override
+        public void headersRead(int statusCode) {
+            RequestTimings.this.headersRead(statusCode);
+            headersMark = input.consumed();
+            if (headersEvent != null) {
+                headersEvent.end(RequestTimings.this, headersMark - inputMark);
+            }
+            bodyEvent = ClientEvents.beginResponseBody();
+            delegate.headersRead(statusCode);
+        }
+
+        @Override
+        public void bodyDone(boolean reusable) {
+            long consumed = input.consumed();
+            bytesReceived = consumed - inputMark;
+            if (bodyEvent != null) {
+                bodyEvent.end(RequestTimings.this, consumed - headersMark, reusable);
+            }
+            try {
+                delegate.bodyDone(reusable);
+            } finally {
+                finish();
+            }
+        }
+    }
+}
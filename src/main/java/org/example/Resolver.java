@@ -0,0 +1,12 @@
+package org.example;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+public interface Resolver {
+    InetAddress[] resolve(String host) throws UnknownHostException;
+
+    static Resolver system() {
+        return InetAddress::getAllByName;
+    }
+}
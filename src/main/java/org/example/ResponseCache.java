@@ -0,0 +1,631 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResponseCache implements Closeable {
+    static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final long maxMemoryBytes;
+    private final Map<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private final SegmentStore disk;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+
+    ResponseCache(long maxMemoryBytes, Path directory, long maxDiskBytes) throws IOException {
+        if (maxMemoryBytes <= 0) {
+            throw new IllegalArgumentException("Invalid cache size " + maxMemoryBytes);
+        }
+
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.disk = directory == null ? null : new SegmentStore(directory, maxDiskBytes, SEGMENT_SIZE);
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long revalidationCount() {
+        return revalidations.get();
+    }
+
+    <T> HttpResponse<T> send(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException {
+        String key = request.uri().toString();
+        if (!request.method().equals("GET")) {
+            HttpResponse<T> response = client.sendNetwork(request, bodyHandler);
+            if (response.statusCode() < 400) {
+                invalidate(key);
+            }
+            return response;
+        }
+
+        String requestCacheControl = request.headers().get(HttpHeaders.CACHE_CONTROL);
+        if (directive(requestCacheControl, "no-store") != null) {
+            misses.incrementAndGet();
+            return client.sendNetwork(request, bodyHandler);
+        }
+
+        Entry entry = lookup(key);
+        boolean forceRevalidation = directive(requestCacheControl, "no-cache") != null
+                || "0".equals(directive(requestCacheControl, "max-age"));
+        if (entry != null && !forceRevalidation && entry.isFresh(System.currentTimeMillis())) {
+            hits.incrementAndGet();
+            return entry.response(bodyHandler);
+        }
+
+        if (entry != null && (entry.etag != null || entry.lastModified != null)) {
+            return revalidate(client, request, key, entry, bodyHandler);
+        }
+
+        misses.incrementAndGet();
+        if (bodyHandler instanceof HttpResponse.StreamingBodyHandler
+                || bodyHandler instanceof HttpResponse.BodyHandlerOfByteBuffer) {
+            invalidate(key);
+            return client.sendNetwork(request, bodyHandler);
+        }
+
+        long requestMillis = System.currentTimeMillis();
+        CapturingHandler<T> capturingHandler = new CapturingHandler<>(bodyHandler, maxMemoryBytes);
+        HttpResponse<T> response = client.sendNetwork(request, capturingHandler);
+        byte[] body = capturingHandler.captured();
+        if (body != null) {
+            store(key, response, body, requestMillis);
+        } else {
+            invalidate(key);
+        }
+        return response;
+    }
+
+    private <T> HttpResponse<T> revalidate(HttpClient client, HttpRequest request, String key, Entry entry,
+                                           HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        long requestMillis = System.currentTimeMillis();
+        HttpRequest conditional = request.conditional(entry.etag, entry.lastModified);
+        RevalidationHandler<T> revalidationHandler = bodyHandler instanceof HttpResponse.StreamingBodyHandler
+                ? new StreamingRevalidationHandler<>(bodyHandler)
+                : new RevalidationHandler<>(bodyHandler,
+                        bodyHandler instanceof HttpResponse.BodyHandlerOfByteBuffer ? -1 : maxMemoryBytes);
+        HttpResponse<T> response = client.sendNetwork(conditional, revalidationHandler);
+        if (response.statusCode() == 304) {
+            revalidations.incrementAndGet();
+            Entry refreshed = entry.refreshed(response.headers(), requestMillis);
+            store(key, refreshed);
+            return refreshed.response(bodyHandler);
+        }
+
+        misses.incrementAndGet();
+        if (revalidationHandler.skipped) {
+            byte[] message = encode(response, new byte[0]);
+            if (isStorable(response)) {
+                store(key, newEntry(key, response, message, requestMillis));
+            } else {
+                invalidate(key);
+            }
+            return parse(message, bodyHandler);
+        }
+
+        byte[] body = revalidationHandler.captured();
+        if (body != null) {
+            store(key, response, body, requestMillis);
+        } else {
+            invalidate(key);
+        }
+        return response;
+    }
+
+    private void store(String key, HttpResponse<?> response, byte[] body, long requestMillis) throws IOException {
+        if (isStorable(response)) {
+            store(key, newEntry(key, response, encode(response, body), requestMillis));
+        } else {
+            invalidate(key);
+        }
+    }
+
+    private void store(String key, Entry entry) throws IOException {
+        if (entry.length > maxMemoryBytes) {
+            invalidate(key);
+            if (disk != null) {
+                disk.put(entry);
+            }
+            return;
+        }
+
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = memory.put(key, entry);
+            if (previous != null) {
+                memoryBytes -= previous.length;
+            }
+
+            memoryBytes += entry.length;
+            for (Iterator<Entry> it = memory.values().iterator(); memoryBytes > maxMemoryBytes && it.hasNext(); ) {
+                Entry eldest = it.next();
+                it.remove();
+                memoryBytes -= eldest.length;
+                evicted.add(eldest);
+            }
+        }
+
+        if (disk != null) {
+            disk.remove(key);
+            for (Entry eldest : evicted) {
+                disk.put(eldest);
+            }
+        }
+    }
+
+    private Entry lookup(String key) throws IOException {
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null || disk == null) {
+                return entry;
+            }
+        }
+
+        Entry entry = disk.take(key);
+        if (entry != null) {
+            store(key, entry);
+        }
+        return entry;
+    }
+
+    private void invalidate(String key) {
+        synchronized (this) {
+            Entry entry = memory.remove(key);
+            if (entry != null) {
+                memoryBytes -= entry.length;
+            }
+        }
+
+        if (disk != null) {
+            disk.remove(key);
+        }
+    }
+
+    synchronized int memoryCount() {
+        return memory.size();
+    }
+
+    int diskCount() {
+        return disk == null ? 0 : disk.count();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    static boolean isStorable(HttpResponse<?> response) {
+        if (response.statusCode() != 200) {
+            return false;
+        }
+
+        HttpHeaders headers = response.headers();
+        String cacheControl = headers.get(HttpHeaders.CACHE_CONTROL);
+        if (directive(cacheControl, "no-store") != null) {
+            return false;
+        }
+
+        String vary = headers.get(HttpHeaders.VARY);
+        if (vary != null && !vary.isBlank()) {
+            return false;
+        }
+
+        return directive(cacheControl, "max-age") != null || directive(cacheControl, "no-cache") != null
+                || headers.contains(HttpHeaders.EXPIRES) || headers.contains(HttpHeaders.ETAG)
+                || headers.contains(HttpHeaders.LAST_MODIFIED);
+    }
+
+    private static Entry newEntry(String key, HttpResponse<?> response, byte[] message, long requestMillis) {
+        HttpHeaders headers = response.headers();
+        Entry entry = new Entry(key, message, message.length, headers.get(HttpHeaders.ETAG),
+                headers.get(HttpHeaders.LAST_MODIFIED));
+        entry.refresh(headers, requestMillis);
+        return entry;
+    }
+
+    static long freshnessLifetime(HttpHeaders headers, long responseMillis) {
+        String cacheControl = headers.get(HttpHeaders.CACHE_CONTROL);
+        if (directive(cacheControl, "no-cache") != null) {
+            return 0;
+        }
+
+        String maxAge = directive(cacheControl, "max-age");
+        long lifetime;
+        if (maxAge != null) {
+            lifetime = parseSeconds(maxAge) * 1000;
+        } else if (headers.contains(HttpHeaders.EXPIRES)) {
+            long expires = parseDate(headers.get(HttpHeaders.EXPIRES));
+            long date = parseDate(headers.get(HttpHeaders.DATE));
+            lifetime = expires < 0 ? 0 : expires - (date < 0 ? responseMillis : date);
+        } else {
+            return -1;
+        }
+
+        String age = headers.get(HttpHeaders.AGE);
+        if (age != null) {
+            lifetime -= parseSeconds(age) * 1000;
+        }
+        return Math.max(0, lifetime);
+    }
+
+    static String directive(String cacheControl, String name) {
+        if (cacheControl == null) {
+            return null;
+        }
+
+        for (String directive : cacheControl.split(",")) {
+            int equals = directive.indexOf('=');
+            String directiveName = (equals == -1 ? directive : directive.substring(0, equals)).trim();
+            if (directiveName.equalsIgnoreCase(name)) {
+                return equals == -1 ? "" : directive.substring(equals + 1).trim().replace("\"", "");
+            }
+        }
+        return null;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    static byte[] encode(HttpResponse<?> response, byte[] body) {
+        StringBuilder head = new StringBuilder(256);
+        head.append(response.version()).append(' ').append(response.statusCode()).append("\r\n");
+        HttpHeaders headers = response.headers();
+        for (int i = 0; i < headers.size(); i++) {
+            if (isFramingHeader(headers.ordinalAt(i))) {
+                continue;
+            }
+            head.append(headers.name(i)).append(": ").append(headers.value(i)).append("\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] message = Arrays.copyOf(headBytes, headBytes.length + body.length);
+        System.arraycopy(body, 0, message, headBytes.length, body.length);
+        return message;
+    }
+
+    private static boolean isFramingHeader(int ordinal) {
+        return ordinal == HttpHeaders.CONTENT_LENGTH || ordinal == HttpHeaders.TRANSFER_ENCODING
+                || ordinal == HttpHeaders.CONNECTION || ordinal == HttpHeaders.KEEP_ALIVE;
+    }
+
+    static <T> HttpResponse<T> parse(byte[] message, HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        return new HttpResponse<>(new HttpInput(ByteBuffer.wrap(message), null), bodyHandler, false);
+    }
+
+    static class Entry {
+        final String key;
+        final int length;
+        byte[] message;
+        volatile String etag;
+        volatile String lastModified;
+        volatile long freshUntilMillis;
+        long segmentOffset;
+        SegmentStore.Segment segment;
+
+        Entry(String key, byte[] message, int length, String etag, String lastModified) {
+            this.key = key;
+            this.message = message;
+            this.length = length;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean isFresh(long nowMillis) {
+            return nowMillis < freshUntilMillis;
+        }
+
+        void refresh(HttpHeaders headers, long responseMillis) {
+            long lifetime = freshnessLifetime(headers, responseMillis);
+            if (lifetime >= 0) {
+                freshUntilMillis = responseMillis + lifetime;
+            }
+
+            String newEtag = headers.get(HttpHeaders.ETAG);
+            if (newEtag != null) {
+                etag = newEtag;
+            }
+
+            String newLastModified = headers.get(HttpHeaders.LAST_MODIFIED);
+            if (newLastModified != null) {
+                lastModified = newLastModified;
+            }
+        }
+
+        Entry refreshed(HttpHeaders update, long responseMillis) throws IOException {
+            HttpResponse<byte[]> stored = parse(message, HttpResponse.BodyHandlers.ofByteArray());
+            HttpHeaders headers = stored.headers();
+            for (int i = 0; i < update.size(); i++) {
+                if (isFramingHeader(update.ordinalAt(i))) {
+                    continue;
+                }
+                String name = update.name(i);
+                if (update.indexOf(name) == i) {
+                    headers.remove(name);
+                }
+                headers.add(name, update.value(i));
+            }
+
+            byte[] merged = encode(stored, stored.body());
+            Entry refreshed = new Entry(key, merged, merged.length, etag, lastModified);
+            refreshed.refresh(headers, responseMillis);
+            return refreshed;
+        }
+
+        <T> HttpResponse<T> response(HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+            return parse(message, bodyHandler);
+        }
+    }
+
+    static class CapturingHandler<T> implements HttpResponse.BodyHandler<T> {
+        private final HttpResponse.BodyHandler<T> delegate;
+        private final long limit;
+        private byte[] captured;
+
+        CapturingHandler(HttpResponse.BodyHandler<T> delegate, long limit) {
+            this.delegate = delegate;
+            this.limit = limit;
+        }
+
+        @Override
+        public T readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            if (contentLength > limit) {
+                return delegate.readBody(body, contentLength);
+            }
+
+            TeeChannel tee = new TeeChannel(body, contentLength, limit);
+            T result = delegate.readBody(tee, contentLength);
+            captured = tee.captured();
+            return result;
+        }
+
+        byte[] captured() {
+            return captured;
+        }
+    }
+
+    static class RevalidationHandler<T> extends CapturingHandler<T> {
+        boolean skipped;
+
+        RevalidationHandler(HttpResponse.BodyHandler<T> delegate, long limit) {
+            super(delegate, limit);
+        }
+
+        @Override
+        public T readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            if (contentLength == 0) {
+                skipped = true;
+                return null;
+            }
+            return super.readBody(body, contentLength);
+        }
+    }
+
+    static class StreamingRevalidationHandler<T> extends RevalidationHandler<T>
+            implements HttpResponse.StreamingBodyHandler<T> {
+        private final HttpResponse.BodyHandler<T> delegate;
+
+        StreamingRevalidationHandler(HttpResponse.BodyHandler<T> delegate) {
+            super(delegate, -1);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T readBody(ReadableByteChannel body, long contentLength) throws IOException {
+            if (contentLength != 0) {
+                return delegate.readBody(body, contentLength);
+            }
+
+            skipped = true;
+            while (body.read(ByteBuffer.allocate(0)) != -1);
+            body.close();
+            return null;
+        }
+    }
+
+    static class TeeChannel implements ReadableByteChannel {
+        private final ReadableByteChannel source;
+        private final long contentLength;
+        private final long limit;
+        private ByteArrayOutputStream copy;
+        private boolean eof;
+
+        TeeChannel(ReadableByteChannel source, long contentLength, long limit) {
+            this.source = source;
+            this.contentLength = contentLength;
+            this.limit = limit;
+            this.copy = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 1024);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int start = dst.position();
+            int read = source.read(dst);
+            if (read == -1) {
+                eof = true;
+            } else if (copy != null && read > 0) {
+                if (copy.size() + read > limit) {
+                    copy = null;
+                } else if (dst.hasArray()) {
+                    copy.write(dst.array(), dst.arrayOffset() + start, read);
+                } else {
+                    byte[] bytes = new byte[read];
+                    dst.get(start, bytes);
+                    copy.write(bytes);
+                }
+            }
+            return read;
+        }
+
+        byte[] captured() {
+            if (copy == null || !(eof || copy.size() == contentLength)) {
+                return null;
+            }
+            return copy.toByteArray();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    static class SegmentStore implements Closeable {
+        private static final String SEGMENT_PREFIX = "segment-";
+        private static final String SEGMENT_SUFFIX = ".cache";
+
+        private final Path directory;
+        private final long maxBytes;
+        private final long segmentSize;
+        private final Deque<Segment> segments = new ArrayDeque<>();
+        private final Map<String, Entry> index = new HashMap<>();
+        private long totalBytes;
+        private int nextSegmentId;
+
+        static class Segment {
+            final Path path;
+            final FileChannel channel;
+            long size;
+
+            Segment(Path path) throws IOException {
+                this.path = path;
+                this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+        }
+
+        SegmentStore(Path directory, long maxBytes, long segmentSize) throws IOException {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Invalid disk cache size " + maxBytes);
+            }
+
+            this.directory = Files.createDirectories(directory);
+            this.maxBytes = maxBytes;
+            this.segmentSize = segmentSize;
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stale) {
+                    Files.delete(path);
+                }
+            }
+        }
+
+        synchronized void put(Entry entry) throws IOException {
+            int length = entry.length;
+            if (length > Math.min(maxBytes, segmentSize)) {
+                return;
+            }
+
+            while (!segments.isEmpty() && totalBytes + length > maxBytes) {
+                dropOldestSegment();
+            }
+
+            Segment active = segments.peekLast();
+            if (active == null || active.size + length > segmentSize) {
+                active = new Segment(directory.resolve(SEGMENT_PREFIX + nextSegmentId++ + SEGMENT_SUFFIX));
+                segments.addLast(active);
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(entry.message);
+            while (buffer.hasRemaining()) {
+                active.channel.write(buffer, active.size + buffer.position());
+            }
+
+            Entry spilled = new Entry(entry.key, null, length, entry.etag, entry.lastModified);
+            spilled.freshUntilMillis = entry.freshUntilMillis;
+            spilled.segment = active;
+            spilled.segmentOffset = active.size;
+            active.size += length;
+            totalBytes += length;
+            index.put(entry.key, spilled);
+        }
+
+        synchronized Entry take(String key) throws IOException {
+            Entry entry = index.remove(key);
+            if (entry == null) {
+                return null;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            while (buffer.hasRemaining()) {
+                if (entry.segment.channel.read(buffer, entry.segmentOffset + buffer.position()) == -1) {
+                    throw new EOFException("Truncated cache segment " + entry.segment.path);
+                }
+            }
+
+            entry.message = buffer.array();
+            entry.segment = null;
+            return entry;
+        }
+
+        synchronized void remove(String key) {
+            index.remove(key);
+        }
+
+        synchronized int count() {
+            return index.size();
+        }
+
+        private void dropOldestSegment() throws IOException {
+            Segment oldest = segments.removeFirst();
+            index.values().removeIf(entry -> entry.segment == oldest);
+            totalBytes -= oldest.size;
+            oldest.channel.close();
+            Files.deleteIfExists(oldest.path);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            index.clear();
+            while (!segments.isEmpty()) {
+                Segment segment = segments.removeFirst();
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            }
+            totalBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.example;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.*;
+
+final class ResponsePipe implements ReadableByteChannel {
+    static final int HIGH_WATER_BYTES = 64 * 1024;
+    static final int LOW_WATER_BYTES = 16 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+    private final Runnable resume;
+    private final Runnable abandon;
+    private long bufferedBytes;
+    private boolean paused;
+    private boolean eof;
+    private boolean closed;
+    private IOException failure;
+
+    ResponsePipe(Runnable resume, Runnable abandon) {
+        this.resume = resume;
+        this.abandon = abandon;
+    }
+
+    boolean offer(ByteBuffer chunk) {
+        lock.lock();
+        try {
+            if (closed || failure != null) {
+                BufferPool.DEFAULT.release(chunk);
+                return true;
+            }
+
+            chunks.add(chunk);
+            bufferedBytes += chunk.capacity();
+            readable.signal();
+            paused = bufferedBytes >= HIGH_WATER_BYTES;
+            return !paused;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void finish() {
+        lock.lock();
+        try {
+            eof = true;
+            readable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void fail(IOException e) {
+        lock.lock();
+        try {
+            if (eof || failure != null) {
+                return;
+            }
+            failure = e;
+            releaseChunks();
+            readable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        boolean resumeNeeded = false;
+        int read;
+        lock.lock();
+        try {
+            while (chunks.isEmpty() && !eof && failure == null && !closed) {
+                readable.await();
+            }
+
+            if (closed) {
+                throw new IOException("Response channel is closed");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (chunks.isEmpty()) {
+                return -1;
+            }
+
+            ByteBuffer chunk = chunks.peek();
+            read = Math.min(dst.remaining(), chunk.remaining());
+            dst.put(chunk.slice(chunk.position(), read));
+            chunk.position(chunk.position() + read);
+            if (!chunk.hasRemaining()) {
+                chunks.poll();
+                bufferedBytes -= chunk.capacity();
+                BufferPool.DEFAULT.release(chunk);
+            }
+
+            if (paused && bufferedBytes <= LOW_WATER_BYTES) {
+                paused = false;
+                resumeNeeded = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response bytes");
+        } finally {
+            lock.unlock();
+        }
+
+        if (resumeNeeded) {
+            resume.run();
+        }
+        return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        boolean abandoned;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            abandoned = !eof && failure == null;
+            releaseChunks();
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (abandoned) {
+            abandon.run();
+        }
+    }
+
+    private void releaseChunks() {
+        for (ByteBuffer chunk = chunks.poll(); chunk != null; chunk = chunks.poll()) {
+            BufferPool.DEFAULT.release(chunk);
+        }
+        bufferedBytes = 0;
+    }
+}
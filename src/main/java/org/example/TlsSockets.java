@@ -0,0 +1,37 @@
+package org.example;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.net.Socket;
+
+class TlsSockets {
+    private final SSLSocketFactory factory;
+    private final String[] protocols;
+    private final String[] cipherSuites;
+
+    TlsSockets(SSLContext context, String[] protocols, String[] cipherSuites) {
+        this.factory = context.getSocketFactory();
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+    }
+
+    SSLSocket wrap(Socket plain, String host, int port) throws IOException {
+        SSLSocket socket = (SSLSocket) factory.createSocket(plain, host, port, true);
+        try {
+            SSLParameters parameters = socket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            if (protocols != null) {
+                parameters.setProtocols(protocols);
+            }
+            if (cipherSuites != null) {
+                parameters.setCipherSuites(cipherSuites);
+            }
+            socket.setSSLParameters(parameters);
+            socket.startHandshake();
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+}
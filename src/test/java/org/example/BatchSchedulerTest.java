@@ -0,0 +1,140 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+class BatchSchedulerTest {
+    final Map<String, TestServer> servers = new HashMap<>();
+    HttpClient client;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        for (TestServer server : servers.values()) {
+            server.close();
+        }
+    }
+
+    void server(String host, Function<String, byte[]> responder) throws IOException {
+        servers.put(host, new TestServer(responder));
+    }
+
+    void start(HttpClient.Builder builder) throws IOException {
+        client = spy(builder.build());
+        doAnswer(invocation -> servers.get(invocation.<String>getArgument(0)).connect())
+                .when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+    }
+
+    static HttpRequest request(String host, String path, int priority) throws URISyntaxException {
+        return HttpRequest.newBuilder(new URI("http://" + host + path)).priority(priority).build();
+    }
+
+    static String path(String head) {
+        return head.substring(head.indexOf(' ') + 1, head.indexOf(" HTTP/1.1"));
+    }
+
+    @Test
+    void everyRequestCompletesInInputOrder() throws Exception {
+        server("a.test", head -> TestServer.response("a" + path(head)));
+        server("b.test", head -> TestServer.response("b" + path(head)));
+        start(HttpClient.newBuilder());
+        List<HttpRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(request(i % 2 == 0 ? "a.test" : "b.test", "/" + i, 0));
+        }
+
+        List<CompletableFuture<HttpResponse<String>>> futures = client.sendAll(requests, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(20, futures.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals((i % 2 == 0 ? "a" : "b") + "/" + i, futures.get(i).get(5, TimeUnit.SECONDS).body());
+        }
+        assertEquals(0, client.batchScheduler.running());
+    }
+
+    @Test
+    void slowHostDoesNotStarveOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server("slow.test", head -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TestServer.response("slow");
+        });
+        server("fast.test", head -> TestServer.response("fast"));
+        start(HttpClient.newBuilder().batchConcurrency(4, 2));
+        List<HttpRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(request("slow.test", "/" + i, 0));
+        }
+        for (int i = 0; i < 5; i++) {
+            requests.add(request("fast.test", "/" + i, 0));
+        }
+
+        List<CompletableFuture<HttpResponse<String>>> futures = client.sendAll(requests, HttpResponse.BodyHandlers.ofString());
+
+        for (CompletableFuture<HttpResponse<String>> future : futures.subList(10, 15)) {
+            assertEquals("fast", future.get(5, TimeUnit.SECONDS).body());
+        }
+        assertEquals(2, client.batchScheduler.running());
+        assertEquals(2, servers.get("slow.test").connections.get());
+
+        release.countDown();
+        for (CompletableFuture<HttpResponse<String>> future : futures.subList(0, 10)) {
+            assertEquals("slow", future.get(5, TimeUnit.SECONDS).body());
+        }
+        assertEquals(2, servers.get("slow.test").connections.get());
+        assertTrue(servers.get("fast.test").connections.get() <= 2);
+    }
+
+    @Test
+    void higherPriorityIsDispatchedFirst() throws Exception {
+        server("a.test", head -> TestServer.response("ok"));
+        start(HttpClient.newBuilder().batchConcurrency(1, 1));
+        List<HttpRequest> requests = List.of(
+                request("a.test", "/low", 0),
+                request("a.test", "/high", 5),
+                request("a.test", "/mid", 1),
+                request("a.test", "/low2", 0));
+
+        CompletableFuture.allOf(client.sendAll(requests, HttpResponse.BodyHandlers.ofString())
+                .toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        List<String> order = servers.get("a.test").requestHeads.stream().map(BatchSchedulerTest::path).toList();
+        assertEquals(List.of("/high", "/mid", "/low", "/low2"), order);
+        assertEquals(1, servers.get("a.test").connections.get());
+    }
+
+    @Test
+    void failuresCompleteTheirOwnFuture() throws Exception {
+        server("a.test", head -> TestServer.response("ok"));
+        start(HttpClient.newBuilder().batchConcurrency(1, 1));
+        List<HttpRequest> requests = List.of(request("a.test", "/", 0), request("missing.test", "/", 0));
+        doThrow(new ConnectException("refused")).when(client).getSocket(eq("missing.test"), anyInt(), anyInt(), any());
+
+        List<CompletableFuture<HttpResponse<String>>> futures = client.sendAll(requests, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals("ok", futures.get(0).get(5, TimeUnit.SECONDS).body());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> futures.get(1).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectException.class, e.getCause());
+        assertEquals(0, client.batchScheduler.running());
+    }
+
+    @Test
+    void invalidConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().batchConcurrency(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().batchConcurrency(1, 0));
+    }
+}
@@ -0,0 +1,196 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+class BufferPoolTest {
+    BufferPool pool = new BufferPool(false);
+
+    @Test
+    void buffersAreRoundedUpToSizeClasses() {
+        ByteBuffer small = pool.acquire(1);
+        ByteBuffer medium = pool.acquire(5000);
+        ByteBuffer huge = pool.acquire(BufferPool.MAX_SIZE + 1);
+
+        assertTrue(small.isDirect());
+        assertEquals(4096, small.capacity());
+        assertEquals(8192, medium.capacity());
+        assertEquals(BufferPool.MAX_SIZE + 1, huge.capacity());
+        assertEquals(3, pool.inUse());
+        assertThrows(IllegalArgumentException.class, () -> pool.acquire(-1));
+
+        pool.release(small);
+        pool.release(medium);
+        pool.release(huge);
+        assertEquals(0, pool.inUse());
+        assertEquals(4096 + 8192, pool.pooledBytes());
+    }
+
+    @Test
+    void heapBuffersArePooledSeparately() {
+        ByteBuffer heap = pool.acquireHeap(10_000);
+        assertFalse(heap.isDirect());
+        assertTrue(heap.hasArray());
+        assertEquals(16 * 1024, heap.capacity());
+        pool.release(heap);
+
+        ByteBuffer direct = pool.acquire(10_000);
+        assertTrue(direct.isDirect());
+        assertSame(heap, pool.acquireHeap(16 * 1024));
+        assertEquals(2, pool.allocated());
+    }
+
+    @Test
+    void releasedBuffersAreReusedAcrossThreads() throws Exception {
+        ByteBuffer first = pool.acquire(100_000);
+        first.putInt(42);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> pool.release(first)).get();
+        } finally {
+            executor.shutdown();
+        }
+
+        ByteBuffer second = pool.acquire(100_000);
+
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(second.capacity(), second.limit());
+        assertEquals(1, pool.allocated());
+    }
+
+    @Test
+    void steadyStateDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 10_000; i++) {
+            cycle();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            cycle();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(3, pool.allocated());
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+    }
+
+    void cycle() {
+        ByteBuffer a = pool.acquire(4096);
+        ByteBuffer b = pool.acquire(16 * 1024);
+        ByteBuffer c = pool.acquire(256 * 1024);
+        pool.release(c);
+        pool.release(b);
+        pool.release(a);
+    }
+
+    @Test
+    void outputGrowsThroughSizeClasses() {
+        BufferPool.Output out = pool.new Output(10);
+        byte[] chunk = new byte[3000];
+        for (int i = 0; i < 5; i++) {
+            chunk[0] = (byte) i;
+            out.write(chunk, 0, chunk.length);
+        }
+
+        ByteBuffer buffer = out.toBuffer();
+
+        assertEquals(15_000, buffer.remaining());
+        assertEquals(16 * 1024, buffer.capacity());
+        assertEquals(4, buffer.get(12_000));
+        assertEquals(1, pool.inUse());
+        pool.release(buffer);
+        assertEquals(0, pool.inUse());
+    }
+
+    @Test
+    void leakDetectionReportsUnreleasedBuffersWithoutRecyclingThem() throws Exception {
+        BufferPool tracked = new BufferPool(true);
+        ByteBuffer released = tracked.acquire(4096);
+        tracked.release(released);
+        assertThrows(IllegalStateException.class, () -> tracked.release(released));
+        assertThrows(IllegalStateException.class, () -> tracked.release(ByteBuffer.allocateDirect(4096)));
+
+        leak(tracked);
+        for (int i = 0; i < 100 && tracked.leaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, tracked.leaks());
+        assertEquals(0, tracked.inUse());
+        assertEquals(4096, tracked.pooledBytes());
+    }
+
+    @Test
+    void leakedMemoryStillReachableThroughDerivedBufferIsNotReused() throws Exception {
+        BufferPool tracked = new BufferPool(true);
+        ByteBuffer derived = leakDerived(tracked);
+        for (int i = 0; i < 100 && tracked.leaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, tracked.leaks());
+
+        ByteBuffer next = tracked.acquire(8192);
+        next.put(0, (byte) 2);
+
+        assertEquals(1, derived.get(0));
+        assertEquals(2, tracked.allocated());
+    }
+
+    ByteBuffer leakDerived(BufferPool tracked) {
+        ByteBuffer view = tracked.acquire(8192);
+        view.put(0, (byte) 1);
+        return view.asReadOnlyBuffer();
+    }
+
+    void leak(BufferPool tracked) {
+        tracked.acquire(8192).putLong(1);
+    }
+
+    @Test
+    void nonBlockingExchangesReturnBuffers() throws Exception {
+        try (TestServer server = TestServer.withBody("pooled body");
+             HttpClient client = spy(HttpClient.newBuilder().nioEventLoops(1).build())) {
+            doAnswer(invocation -> new InetSocketAddress(server.serverSocket.getInetAddress(), server.port()))
+                    .when(client).getSocketAddress(anyString(), anyInt());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/pooled")).build();
+            long inUse = client.bufferPool().inUse();
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals("pooled body", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            }
+
+            assertEquals(inUse, client.bufferPool().inUse());
+        }
+    }
+
+    @Test
+    void byteBufferBodiesAreReleasedByClose() throws Exception {
+        try (TestServer server = TestServer.withBody("off-heap body");
+             HttpClient client = spy(HttpClient.newBuilder().nioEventLoops(1).build())) {
+            doAnswer(invocation -> new InetSocketAddress(server.serverSocket.getInetAddress(), server.port()))
+                    .when(client).getSocketAddress(anyString(), anyInt());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/off-heap")).build();
+            long inUse = client.bufferPool().inUse();
+
+            try (HttpResponse<ByteBuffer> response = client.send(request, HttpResponse.BodyHandlers.ofByteBuffer())) {
+                assertEquals("off-heap body", StandardCharsets.UTF_8.decode(response.body()).toString());
+                assertEquals(inUse + 1, client.bufferPool().inUse());
+            }
+
+            assertEquals(inUse, client.bufferPool().inUse());
+        }
+    }
+}
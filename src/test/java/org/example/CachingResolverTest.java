@@ -0,0 +1,76 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import java.net.*;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+class CachingResolverTest {
+    StaticResolver hosts;
+    long now;
+    CachingResolver resolver;
+
+    @BeforeEach
+    void setUp() throws UnknownHostException {
+        hosts = new StaticResolver().map("upstream", "10.0.0.1", "10.0.0.2", "10.0.0.3");
+        resolver = new CachingResolver(hosts, TimeUnit.SECONDS.toNanos(30), TimeUnit.SECONDS.toNanos(5), () -> now);
+    }
+
+    @Test
+    void roundRobinAcrossAddresses() throws UnknownHostException {
+        assertEquals("10.0.0.1", resolver.next("upstream").getHostAddress());
+        assertEquals("10.0.0.2", resolver.next("upstream").getHostAddress());
+        assertEquals("10.0.0.3", resolver.next("upstream").getHostAddress());
+        assertEquals("10.0.0.1", resolver.next("upstream").getHostAddress());
+        assertEquals(1, hosts.lookups.get());
+    }
+
+    @Test
+    void positiveEntryExpiresAfterTtl() throws UnknownHostException {
+        resolver.next("upstream");
+        now += TimeUnit.SECONDS.toNanos(29);
+        resolver.next("upstream");
+        assertEquals(1, hosts.lookups.get());
+
+        hosts.map("upstream", "10.0.0.9");
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertEquals("10.0.0.9", resolver.next("upstream").getHostAddress());
+        assertEquals(2, hosts.lookups.get());
+    }
+
+    @Test
+    void failuresAreCachedForNegativeTtl() throws UnknownHostException {
+        assertThrows(UnknownHostException.class, () -> resolver.next("missing"));
+        assertThrows(UnknownHostException.class, () -> resolver.next("missing"));
+        assertEquals(1, hosts.lookups.get());
+
+        hosts.map("missing", "10.0.0.4");
+        now += TimeUnit.SECONDS.toNanos(5);
+        assertEquals("10.0.0.4", resolver.next("missing").getHostAddress());
+        assertEquals(2, hosts.lookups.get());
+    }
+
+    @Test
+    void invalidTtl() {
+        assertThrows(IllegalArgumentException.class, () -> new CachingResolver(hosts, -1, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> HttpClient.newBuilder().dnsCacheTtl(Duration.ofSeconds(-1), Duration.ZERO));
+    }
+
+    @Test
+    void clientSpreadsConnectionsAcrossAddresses() throws UnknownHostException {
+        try (HttpClient client = HttpClient.newBuilder().resolver(hosts).build()) {
+            InetSocketAddress first = client.getSocketAddress("upstream", 80);
+            InetSocketAddress second = client.getSocketAddress("upstream", 80);
+
+            assertEquals("10.0.0.1", first.getAddress().getHostAddress());
+            assertEquals("10.0.0.2", second.getAddress().getHostAddress());
+            assertEquals(80, first.getPort());
+            assertEquals("upstream", first.getHostName());
+            assertThrows(UnknownHostException.class, () -> client.getSocketAddress("missing", 80));
+            assertEquals(2, hosts.lookups.get());
+        }
+    }
+}
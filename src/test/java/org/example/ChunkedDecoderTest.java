@@ -0,0 +1,81 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+class ChunkedDecoderTest {
+    ChunkedDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        decoder = new ChunkedDecoder();
+    }
+
+    String decode(String encoded) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(encoded.getBytes(StandardCharsets.ISO_8859_1));
+        ByteBuffer dst = ByteBuffer.allocate(1024);
+        decoder.decode(src, dst);
+        return new String(dst.array(), 0, dst.position(), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void decodeChunks() throws IOException {
+        assertEquals("some body", decode("4\r\nsome\r\n5\r\n body\r\n0\r\n\r\n"));
+        assertTrue(decoder.isDone());
+    }
+
+    @Test
+    void decodeByteByByte() throws IOException {
+        byte[] encoded = "a;ext=1\r\n0123456789\r\n0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer dst = ByteBuffer.allocate(16);
+        for (byte b : encoded) {
+            decoder.decode(ByteBuffer.wrap(new byte[] {b}), dst);
+        }
+
+        assertTrue(decoder.isDone());
+        assertEquals("0123456789", new String(dst.array(), 0, dst.position(), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void decodeTrailers() throws IOException {
+        decode("3\r\nabc\r\n0\r\nChecksum: 123\r\nX-Done: yes\r\n\r\n");
+        assertTrue(decoder.isDone());
+        assertEquals("123", decoder.trailers.firstValue("Checksum").get());
+        assertEquals("yes", decoder.trailers.firstValue("X-Done").get());
+    }
+
+    @Test
+    void stopsWhenDestinationIsFull() throws IOException {
+        ByteBuffer src = ByteBuffer.wrap("6\r\nabcdef\r\n0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        ByteBuffer dst = ByteBuffer.allocate(4);
+
+        assertFalse(decoder.decode(src, dst));
+        assertEquals(4, dst.position());
+        dst.clear();
+        assertTrue(decoder.decode(src, dst));
+        assertEquals(2, dst.position());
+    }
+
+    @Test
+    void skipWithoutDestination() throws IOException {
+        ByteBuffer src = ByteBuffer.wrap("3\r\nabc\r\n0\r\n\r\nHTTP".getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(decoder.decode(src, null));
+        assertEquals(4, src.remaining());
+    }
+
+    @Test
+    void invalidChunkSize() {
+        assertThrows(IOException.class, () -> decode("zz\r\nabc\r\n"));
+        assertThrows(IOException.class, () -> new ChunkedDecoder().decode(
+                ByteBuffer.wrap("\r\n".getBytes(StandardCharsets.ISO_8859_1)), null));
+    }
+
+    @Test
+    void missingCrlfAfterData() {
+        assertThrows(IOException.class, () -> decode("3\r\nabcd\r\n"));
+    }
+}
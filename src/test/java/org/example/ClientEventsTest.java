@@ -0,0 +1,107 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.*;
+
+class ClientEventsTest {
+    static final List<String> EVENTS = List.of("org.example.Request", "org.example.ConnectionOpen",
+            "org.example.ConnectionReuse", "org.example.ConnectionClose", "org.example.ResponseHeaders",
+            "org.example.ResponseBody");
+
+    TestServer server;
+    HttpRequest request;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new TestServer(head -> TestServer.response("recorded body"));
+        request = HttpRequest.newBuilder(new URI("http://localhost/jfr")).build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    static Configuration configuration() throws Exception {
+        try (Reader reader = new InputStreamReader(ClientEventsTest.class.getResourceAsStream("/http-client.jfc"),
+                StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+
+    Map<String, List<RecordedEvent>> record(Recording recording, Path file) throws Exception {
+        recording.start();
+        try (HttpClient client = spy(HttpClient.newBuilder().build())) {
+            doReturn(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.serverSocket.getLocalPort()))
+                    .when(client).getSocketAddress(anyString(), anyInt());
+            client.send(request, HttpResponse.BodyHandlers.ofString());
+            client.send(request, HttpResponse.BodyHandlers.ofString());
+        }
+        recording.stop();
+        recording.dump(file);
+
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> EVENTS.contains(event.getEventType().getName()))
+                .collect(Collectors.groupingBy(event -> event.getEventType().getName()));
+    }
+
+    @Test
+    void settingsFileDefinesThresholds() throws Exception {
+        Map<String, String> settings = configuration().getSettings();
+
+        assertEquals("20 ms", settings.get("org.example.Request#threshold"));
+        assertEquals("10 ms", settings.get("org.example.ConnectionOpen#threshold"));
+        assertEquals("true", settings.get("org.example.ConnectionClose#enabled"));
+    }
+
+    @Test
+    void clientOperationsAreRecorded(@TempDir Path directory) throws Exception {
+        Map<String, List<RecordedEvent>> events;
+        try (Recording recording = new Recording()) {
+            for (String name : EVENTS) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            events = record(recording, directory.resolve("events.jfr"));
+        }
+
+        List<RecordedEvent> requests = events.get("org.example.Request");
+        assertEquals(2, requests.size());
+        assertEquals(request.route(), requests.get(0).getString("route"));
+        assertEquals("GET", requests.get(0).getString("method"));
+        assertEquals(200, requests.get(0).getInt("status"));
+        assertEquals(TestServer.response("recorded body").length, requests.get(0).getLong("bytesReceived"));
+        assertTrue(requests.get(0).getLong("connect") >= 0);
+        assertEquals(1, events.get("org.example.ConnectionOpen").size());
+        assertTrue(events.get("org.example.ConnectionOpen").get(0).getBoolean("connected"));
+        assertEquals(1, events.get("org.example.ConnectionReuse").size());
+        assertEquals(1, events.get("org.example.ConnectionClose").size());
+        assertEquals(2, events.get("org.example.ResponseHeaders").size());
+        assertEquals("recorded body".length(), events.get("org.example.ResponseBody").get(0).getLong("bytes"));
+    }
+
+    @Test
+    void fastOperationsStayBelowThresholds(@TempDir Path directory) throws Exception {
+        Map<String, List<RecordedEvent>> events;
+        try (Recording recording = new Recording(configuration())) {
+            events = record(recording, directory.resolve("events.jfr"));
+        }
+
+        assertFalse(events.containsKey("org.example.ResponseBody"));
+        assertFalse(events.containsKey("org.example.ConnectionReuse"));
+        assertEquals(1, events.get("org.example.ConnectionClose").size());
+    }
+}
@@ -0,0 +1,147 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.net.*;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+class ConnectionPoolTest {
+    TestServer server;
+    ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = TestServer.withBody("some body");
+        pool = new ConnectionPool(2, TimeUnit.SECONDS.toNanos(30));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pool.close();
+        server.close();
+    }
+
+    Connection open() throws IOException {
+        return new Connection("localhost", server.connectChannel());
+    }
+
+    @Test
+    void reuseReleasedConnection() throws IOException {
+        Connection first = pool.acquire("localhost", this::open);
+        pool.release(first);
+        Connection second = pool.acquire("localhost", this::open);
+
+        assertSame(first, second);
+        assertTrue(second.reused);
+    }
+
+    @Test
+    void discardedConnectionIsNotReused() throws IOException {
+        Connection first = pool.acquire("localhost", this::open);
+        pool.discard(first);
+        Connection second = pool.acquire("localhost", this::open);
+
+        assertNotSame(first, second);
+        assertTrue(first.socket.isClosed());
+    }
+
+    @Test
+    void staleConnectionIsNotReused() throws Exception {
+        Connection first = pool.acquire("localhost", this::open);
+        pool.release(first);
+        server.awaitConnections(1);
+        server.dropConnections();
+        Thread.sleep(50);
+
+        Connection second = pool.acquire("localhost", this::open);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    void staleCheckDoesNotWaitOnLiveConnection() throws Exception {
+        Connection connection = open();
+        connection.readTimeout(5000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(connection.isStale());
+        }
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(5000, connection.socket.getSoTimeout());
+        assertTrue(connection.socket.getChannel().isBlocking());
+        connection.close();
+    }
+
+    @Test
+    void expiredConnectionsAreEvicted() throws IOException {
+        pool.close();
+        pool = new ConnectionPool(2, 1);
+        Connection connection = pool.acquire("localhost", this::open);
+        pool.release(connection);
+
+        assertEquals(1, pool.evictExpired());
+        assertEquals(0, pool.idleCount("localhost"));
+        assertTrue(connection.socket.isClosed());
+    }
+
+    @Test
+    void maxConnectionsPerRoute() throws Exception {
+        Connection first = pool.acquire("localhost", this::open);
+        pool.acquire("localhost", this::open);
+
+        Thread waiter = new Thread(() -> assertThrows(InterruptedIOException.class,
+                () -> pool.acquire("localhost", this::open)));
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+        waiter.interrupt();
+        waiter.join();
+
+        pool.release(first);
+        assertSame(first, pool.acquire("localhost", this::open));
+    }
+
+    @Test
+    void invalidMaxConnections() {
+        assertThrows(IllegalArgumentException.class, () -> new ConnectionPool(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().maxConnectionsPerRoute(0));
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().idleTimeout(Duration.ZERO));
+    }
+
+    @Test
+    void clientReusesKeepAliveConnection() throws Exception {
+        HttpClient client = spy(HttpClient.newBuilder().maxConnectionsPerRoute(1).build());
+        doAnswer(invocation -> server.connect()).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+        HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/get")).build();
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals("some body", response.body());
+        }
+
+        assertEquals(3, server.requests.get());
+        assertEquals(1, server.connections.get());
+        client.close();
+    }
+
+    @Test
+    void clientClosesConnectionOnConnectionClose() throws Exception {
+        HttpClient client = spy(HttpClient.newBuilder().build());
+        doAnswer(invocation -> server.connect()).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+        HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/get"))
+                .setHeader("Connection", "close")
+                .build();
+
+        client.send(request, HttpResponse.BodyHandlers.ofString());
+        client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(2, server.connections.get());
+        client.close();
+    }
+}
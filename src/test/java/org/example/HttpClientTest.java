@@ -10,7 +10,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,7 +37,9 @@ class HttpClientTest {
 
     @Test
     void send() throws Exception {
-        HttpRequest request = requestBuilder.build();
+        HttpRequest request = HttpRequest.newBuilder(new URI("http://postman-echo.com/post"))
+                .POST(HttpRequest.BodyPublishers.ofString(bodyStr))
+                .build();
         String host = request.host();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
 
@@ -49,17 +57,18 @@ class HttpClientTest {
         when(mockedSocket.getOutputStream()).thenReturn(out);
 
         HttpClient mockedClient = spy(HttpClient.class);
-        when(mockedClient.getSocket(host)).thenReturn(mockedSocket);
+        doReturn(mockedSocket).when(mockedClient).getSocket(eq(host), eq(80), anyInt(), any());
 
         assertNotNull(mockedClient.send(request, HttpResponse.BodyHandlers.ofString()));
     }
 
+    static String headStr(HttpRequest request) {
+        return StandardCharsets.ISO_8859_1.decode(request.encodedHead()).toString();
+    }
+
     String getHeadersStr() {
-        StringWriter out = new StringWriter();
-        PrintWriter printWriter = new PrintWriter(out);
-        HttpRequest validRequest = requestBuilder.build();
-        client.printHeaders(validRequest.headers(), printWriter);
-        return out.toString();
+        String head = headStr(requestBuilder.build());
+        return head.substring(head.indexOf("\r\n") + 2);
     }
 
     String[][] getHeaderPairs() {
@@ -102,8 +111,8 @@ class HttpClientTest {
         Map<String, String> expectedHeaders = new HashMap<>();
         expectedHeaders.put("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8");
         expectedHeaders.put("Accept-Language", "en-US,en;q=0.5");
-        expectedHeaders.put("Accept-Encoding", "gzip, deflate, br");
-        expectedHeaders.put("Connection", "close");
+        expectedHeaders.put("Accept-Encoding", "gzip, deflate");
+        expectedHeaders.put("Connection", "keep-alive");
         expectedHeaders.put("Upgrade-Insecure-Requests", "1");
         expectedHeaders.put("User-Agent", "Java-http-client/11.0.6");
         expectedHeaders.put("Host", "postman-echo.com");
@@ -113,83 +122,155 @@ class HttpClientTest {
 
     @Test
     void changeDefaultHeader() {
-        requestBuilder.setHeader("Connection", "keep-alive");
+        requestBuilder.setHeader("Connection", "close");
         String[][] headerPairs = getHeaderPairs();
         Map<String, String> actualHeaders = Arrays.stream(headerPairs).collect(Collectors.toMap(m -> m[0], m -> m[1]));
         String connectionHeaderValue = actualHeaders.get("Connection");
-        assertEquals("keep-alive", connectionHeaderValue);
+        assertEquals("close", connectionHeaderValue);
     }
 
     @Test
     void printStatus() {
-        StringWriter out = new StringWriter();
-        PrintWriter printWriter = new PrintWriter(out);
         HttpRequest validRequest = requestBuilder.build();
 
-        client.printFirstLine(validRequest, printWriter);
-        String firstLine = out.toString();
+        String firstLine = headStr(validRequest).split("\r\n")[0];
         String[] firstLineParts = firstLine.split(" ");
 
         assertEquals(validRequest.method(), firstLineParts[0]);
         String path = validRequest.uri().getPath();
         assertEquals(path, firstLineParts[1]);
-        assertEquals("HTTP/1.1\r\n", firstLineParts[2]);
+        assertEquals("HTTP/1.1", firstLineParts[2]);
     }
 
     @Test
     void buildHeaderValue() {
-        List<String> headerValues = List.of("value1", "value2", "value3");
-        String headerValue = client.buildHeaderValue(headerValues);
-        assertEquals("value1;value2;value3", headerValue);
+        HttpRequest request = requestBuilder.headers("X-Values", "value1", "X-Values", "value2", "X-Values", "value3").build();
+        assertTrue(headStr(request).contains("\r\nX-Values: value1;value2;value3\r\n"));
     }
 
     @Test
-    void printBodyContentLength() throws IOException {
-        StringWriter out = new StringWriter();
-        PrintWriter printWriter = new PrintWriter(out);
-        HttpRequest validRequest = requestBuilder.build();
+    void requestTargetKeepsRawQuery() throws URISyntaxException {
+        HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/a%20b/c?x=1&y=%2F")).build();
+        assertTrue(headStr(request).startsWith("GET /a%20b/c?x=1&y=%2F HTTP/1.1\r\n"));
+    }
 
-        HttpRequest.BodyPublisher bodyPublisher = validRequest.bodyPublisher().get();
-        client.printBody(bodyPublisher, printWriter);
+    @Test
+    void emptyPathIsSentAsRoot() throws URISyntaxException {
+        assertTrue(headStr(HttpRequest.newBuilder(new URI("http://localhost")).build()).startsWith("GET / HTTP/1.1\r\n"));
+        assertTrue(headStr(HttpRequest.newBuilder(new URI("http://localhost?q=1")).build()).startsWith("GET /?q=1 HTTP/1.1\r\n"));
+    }
+
+    @Test
+    void encodedHeadIsCachedUntilHeadersChange() {
+        HttpRequest request = requestBuilder.build();
+        ByteBuffer first = request.encodedHead();
+        assertSame(first.array(), request.encodedHead().array());
+
+        requestBuilder.setHeader("Connection", "close");
+        ByteBuffer changed = request.encodedHead();
+        assertNotSame(first.array(), changed.array());
+        assertTrue(headStr(request).contains("\r\nConnection: close\r\n"));
 
-        String body = out.toString();
-        String expectedContentLength = validRequest.headers().headers.get("Content-Length").get(0);
-        String actualContentLength = String.valueOf(body.length());
-        assertEquals(expectedContentLength, actualContentLength);
+        requestBuilder.PUT(HttpRequest.BodyPublishers.ofString(bodyStr));
+        assertTrue(headStr(request).startsWith("PUT "));
     }
 
     @Test
     void printBody() throws IOException {
-        StringWriter out = new StringWriter();
-        PrintWriter printWriter = new PrintWriter(out);
         HttpRequest validRequest = requestBuilder.build();
-        HttpRequest.BodyPublisher bodyPublisher = validRequest.bodyPublisher().get();
-        client.printBody(bodyPublisher, printWriter);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        client.sendRequest(validRequest, out);
+        client.sendRequest(validRequest, out);
 
-        byte[] expectedBody = bodyStr.getBytes();
-        byte[] actualBody = out.toString().getBytes();
-        assertArrayEquals(expectedBody, actualBody);
+        String request = headStr(validRequest) + bodyStr;
+        assertEquals(request + request, out.toString());
     }
 
     @Test
-    void getBaosBody() throws IOException {
-        byte[] body = bodyStr.getBytes();
-        HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(body));
-        ByteArrayOutputStream baos = client.getBaosBody(bodyPublisher);
-        assertArrayEquals(baos.toByteArray(), body);
+    void sendHeadAndBodyWithOneGatheringWrite() throws IOException {
+        GatheringByteChannel channel = mock(GatheringByteChannel.class);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        doAnswer(invocation -> {
+            long count = 0;
+            for (ByteBuffer buffer : invocation.<ByteBuffer[]>getArgument(0)) {
+                count += buffer.remaining();
+                written.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+            }
+            return count;
+        }).when(channel).write(any(ByteBuffer[].class));
+
+        HttpRequest validRequest = requestBuilder.build();
+        client.sendRequest(validRequest, OutputStream.nullOutputStream(), channel);
+
+        verify(channel, times(1)).write(any(ByteBuffer[].class));
+        assertEquals(headStr(validRequest) + bodyStr, written.toString());
+    }
+
+    @Test
+    void writeChunked() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        client.writeChunked(() -> new ByteArrayInputStream(bodyStr.getBytes()), out);
+        assertEquals("9\r\nsome body\r\n0\r\n\r\n", out.toString());
     }
 
     @Test
     void inputStreamOutput() throws IOException {
-        byte[] body = bodyStr.getBytes();
+        byte[] body = "x".repeat(HttpClient.CHUNK_SIZE + 10).getBytes();
         HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(body));
         HttpRequest validRequest = HttpRequest.newBuilder(uri).POST(bodyPublisher).build();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         client.sendRequest(validRequest, out);
 
-        String contentLengthHeader = validRequest.headers().headers.get("Content-Length").get(0);
-        String actualContentLength = String.valueOf(body.length);
-        assertEquals(contentLengthHeader, actualContentLength);
+        String output = out.toString();
+        assertTrue(output.contains("Transfer-Encoding: chunked\r\n"));
+        assertFalse(output.contains("Content-Length"));
+
+        ByteBuffer encodedBody = ByteBuffer.wrap(out.toByteArray(), output.indexOf("\r\n\r\n") + 4, 0);
+        encodedBody.limit(out.size());
+        ByteBuffer decodedBody = ByteBuffer.allocate(body.length);
+        assertTrue(new ChunkedDecoder().decode(encodedBody, decodedBody));
+        assertArrayEquals(body, decodedBody.array());
+    }
+
+    @Test
+    void streamingUploadReinvokesSupplier() throws Exception {
+        byte[] body = new byte[5 << 20];
+        new Random(1).nextBytes(body);
+        int[] supplierCalls = new int[1];
+        try (TestServer server = TestServer.withBody("ok");
+             HttpClient uploadClient = spy(HttpClient.newBuilder().build())) {
+            doAnswer(invocation -> server.connect()).when(uploadClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/upload"))
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(() -> {
+                        supplierCalls[0]++;
+                        return new ByteArrayInputStream(body);
+                    }))
+                    .build();
+
+            for (int i = 0; i < 2; i++) {
+                assertEquals("ok", uploadClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                assertArrayEquals(body, server.requestBodies.get(i));
+            }
+            assertEquals(2, supplierCalls[0]);
+        }
+    }
+
+    @Test
+    void bodyWithoutBackingArrayIsWritten() throws Exception {
+        byte[] body = "x".repeat(HttpClient.CHUNK_SIZE + 100).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer direct = ByteBuffer.allocateDirect(body.length).put(body).flip();
+        for (ByteBuffer buffer : new ByteBuffer[] {direct, ByteBuffer.wrap(body).asReadOnlyBuffer()}) {
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/put"))
+                    .PUT(new HttpRequest.ByteBufferPublisher(buffer))
+                    .build();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            client.sendRequest(request, out);
+
+            byte[] sent = out.toByteArray();
+            assertArrayEquals(body, Arrays.copyOfRange(sent, sent.length - body.length, sent.length));
+        }
     }
 
     @Test
@@ -198,4 +279,230 @@ class HttpClientTest {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         assertDoesNotThrow(() -> client.sendRequest(request, out));
     }
-}
\ No newline at end of file
+
+    @Test
+    void sendAsync() throws Exception {
+        try (TestServer server = TestServer.withBody("some body");
+             HttpClient asyncClient = spy(HttpClient.newBuilder().build())) {
+            doAnswer(invocation -> server.connect()).when(asyncClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/get")).build();
+
+            List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(asyncClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            }
+
+            for (CompletableFuture<HttpResponse<String>> future : futures) {
+                assertEquals("some body", future.get(5, TimeUnit.SECONDS).body());
+            }
+        }
+    }
+
+    @Test
+    void putWithBodyIsReplayedAfterStaleConnection() throws Exception {
+        try (TestServer server = TestServer.withBody("ok");
+             HttpClient replayClient = spy(HttpClient.newBuilder().build())) {
+            doAnswer(invocation -> server.connect()).when(replayClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/put"))
+                    .PUT(HttpRequest.BodyPublishers.ofString("payload"))
+                    .build();
+
+            assertEquals("ok", replayClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            server.awaitConnections(1);
+            server.dropConnections();
+
+            assertEquals("ok", replayClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals(2, server.connections.get());
+            assertEquals("payload", new String(server.requestBodies.get(server.requestBodies.size() - 1),
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void sendAsyncFailure() throws Exception {
+        HttpClient asyncClient = spy(HttpClient.newBuilder().build());
+        doThrow(new ConnectException("refused")).when(asyncClient).getSocket(anyString(), anyInt(), anyInt(), any());
+        HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/get")).build();
+
+        var future = asyncClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectException.class, e.getCause());
+    }
+
+    @Test
+    void sendAsyncMaxInFlight() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        try (TestServer server = new TestServer(head -> {
+                 maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                 try {
+                     Thread.sleep(50);
+                 } catch (InterruptedException ignored) {
+                 }
+                 active.decrementAndGet();
+                 return TestServer.response("some body");
+             });
+             HttpClient asyncClient = spy(HttpClient.newBuilder().maxInFlight(2).build())) {
+            doAnswer(invocation -> server.connect()).when(asyncClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/get")).build();
+
+            List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(asyncClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+            assertTrue(maxActive.get() <= 2);
+        }
+    }
+
+    @Test
+    void invalidMaxInFlight() {
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().maxInFlight(0));
+    }
+
+    @Test
+    void advertiseIdentityWithoutDecompression() throws Exception {
+        try (TestServer server = TestServer.withBody("some body");
+             HttpClient plainClient = spy(HttpClient.newBuilder().decompression(false).build())) {
+            doAnswer(invocation -> server.connect()).when(plainClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/get")).build();
+            plainClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            assertTrue(server.requestHeads.get(0).contains("Accept-Encoding: identity\r\n"));
+            assertEquals("gzip, deflate", request.headers().get(HttpHeaders.ACCEPT_ENCODING));
+            assertTrue(headStr(request).contains("Accept-Encoding: gzip, deflate\r\n"));
+        }
+    }
+
+    static Path randomFile(int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        Path file = Files.createTempFile("upload", ".bin");
+        Files.write(file, content);
+        return file;
+    }
+
+    void uploadFile(boolean channelSocket) throws Exception {
+        Path file = randomFile(1 << 20);
+        try (TestServer server = TestServer.withBody("ok");
+             HttpClient uploadClient = spy(HttpClient.newBuilder().build())) {
+            doAnswer(invocation -> channelSocket ? server.connectChannel() : server.connect())
+                    .when(uploadClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/upload"))
+                    .POST(HttpRequest.BodyPublishers.fromFile(file))
+                    .build();
+
+            for (int i = 0; i < 2; i++) {
+                assertEquals("ok", uploadClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+                assertArrayEquals(Files.readAllBytes(file), server.requestBodies.get(i));
+            }
+            assertEquals(1, server.connections.get());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void uploadFileThroughSocketChannel() throws Exception {
+        uploadFile(true);
+    }
+
+    @Test
+    void uploadFileThroughStream() throws Exception {
+        uploadFile(false);
+    }
+
+    @Test
+    void fromFileMissing() {
+        assertThrows(FileNotFoundException.class,
+                () -> HttpRequest.BodyPublishers.fromFile(Path.of("missing-" + System.nanoTime())));
+    }
+
+    @Test
+    void uploadFromPublisherWithBackpressure() throws Exception {
+        byte[] part = "p".repeat(1000).getBytes();
+        int parts = 64;
+        int[] maxOutstanding = new int[1];
+        Flow.Publisher<ByteBuffer> generator = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            int sent;
+            long outstanding;
+
+            @Override
+            public synchronized void request(long n) {
+                outstanding += n;
+                maxOutstanding[0] = (int) Math.max(maxOutstanding[0], outstanding);
+                while (outstanding > 0 && sent < parts) {
+                    outstanding--;
+                    sent++;
+                    subscriber.onNext(ByteBuffer.wrap(part));
+                }
+                if (sent == parts) {
+                    sent++;
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        try (TestServer server = TestServer.withBody("ok");
+             HttpClient uploadClient = spy(HttpClient.newBuilder().build())) {
+            doAnswer(invocation -> server.connect()).when(uploadClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/upload"))
+                    .POST(HttpRequest.BodyPublishers.fromPublisher(generator))
+                    .build();
+
+            assertEquals("ok", uploadClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            assertTrue(server.requestHeads.get(0).contains("Transfer-Encoding: chunked\r\n"));
+            assertEquals(parts * part.length, server.requestBodies.get(0).length);
+            assertTrue(maxOutstanding[0] <= BodyWriter.PREFETCH);
+        }
+    }
+
+    @Test
+    void uploadConcatenatedParts() throws Exception {
+        Path file = randomFile(100_000);
+        try (TestServer server = TestServer.withBody("ok");
+             HttpClient uploadClient = spy(HttpClient.newBuilder().build())) {
+            doAnswer(invocation -> server.connectChannel()).when(uploadClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            SubmissionPublisher<ByteBuffer> tail = new SubmissionPublisher<>();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/upload"))
+                    .POST(HttpRequest.BodyPublishers.concat(
+                            HttpRequest.BodyPublishers.ofString("head:"),
+                            HttpRequest.BodyPublishers.fromFile(file),
+                            HttpRequest.BodyPublishers.fromPublisher(tail, 5)))
+                    .build();
+
+            CompletableFuture<HttpResponse<String>> response = uploadClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            while (tail.getNumberOfSubscribers() == 0) {
+                Thread.sleep(5);
+            }
+            tail.submit(ByteBuffer.wrap(":tail".getBytes()));
+            tail.close();
+
+            assertEquals("ok", response.get(5, TimeUnit.SECONDS).body());
+            byte[] expected = TestServer.concat(TestServer.concat("head:".getBytes(), Files.readAllBytes(file)), ":tail".getBytes());
+            assertTrue(server.requestHeads.get(0).contains("Content-Length: " + expected.length + "\r\n"));
+            assertArrayEquals(expected, server.requestBodies.get(0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void publisherShorterThanContentLengthFails() throws Exception {
+        try (TestServer server = TestServer.withBody("ok");
+             HttpClient uploadClient = spy(HttpClient.newBuilder().build())) {
+            doAnswer(invocation -> server.connect()).when(uploadClient).getSocket(anyString(), anyInt(), anyInt(), any());
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/upload"))
+                    .POST(HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofString("abc"), 10))
+                    .build();
+
+            assertThrows(IOException.class, () -> uploadClient.send(request, HttpResponse.BodyHandlers.ofString()));
+            assertEquals(0, uploadClient.connectionPool.idleCount(request.route()));
+        }
+    }
+}
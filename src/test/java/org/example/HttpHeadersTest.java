@@ -3,8 +3,11 @@ package org.example;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,7 +32,7 @@ class HttpHeadersTest {
 
         httpHeaders.add("Cookie", cookieStr1);
         httpHeaders.add("Cookie", cookieStr2);
-        assertEquals(expectedHeaderValues, httpHeaders.headers.get("Cookie"));
+        assertEquals(expectedHeaderValues, httpHeaders.allValues("Cookie"));
     }
 
     @Test
@@ -38,6 +41,64 @@ class HttpHeadersTest {
 
         httpHeaders.replace("Cookie", cookieStr1);
         httpHeaders.replace("Cookie", cookieStr2);
-        assertEquals(expectedHeaderValues, httpHeaders.headers.get("Cookie"));
+        assertEquals(expectedHeaderValues, httpHeaders.allValues("Cookie"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void lookupIsCaseInsensitive() {
+        httpHeaders.add("content-length", "9");
+        httpHeaders.add("X-Custom", "a");
+        httpHeaders.add("x-custom", "b");
+
+        assertEquals("9", httpHeaders.firstValue("Content-Length").get());
+        assertEquals(9, httpHeaders.getLong(HttpHeaders.CONTENT_LENGTH));
+        assertEquals(List.of("a", "b"), httpHeaders.allValues("X-CUSTOM"));
+        assertEquals(Map.of("content-length", List.of("9"), "X-Custom", List.of("a", "b")), httpHeaders.map());
+    }
+
+    @Test
+    void replaceKeepsPosition() {
+        httpHeaders.add("Host", "example.com");
+        httpHeaders.add("Cookie", cookieStr1);
+        httpHeaders.add("Accept", "*/*");
+        httpHeaders.add("cookie", cookieStr2);
+        httpHeaders.replace("COOKIE", "cookie3=value3");
+
+        assertEquals(3, httpHeaders.size());
+        assertEquals("COOKIE", httpHeaders.name(1));
+        assertEquals("cookie3=value3", httpHeaders.value(1));
+        assertEquals("Accept", httpHeaders.name(2));
+    }
+
+    @Test
+    void remove() {
+        httpHeaders.add("Cookie", cookieStr1);
+        httpHeaders.add("X-Other", "1");
+        httpHeaders.add("cookie", cookieStr2);
+        httpHeaders.remove("COOKIE");
+
+        assertEquals(1, httpHeaders.size());
+        assertTrue(httpHeaders.firstValue("Cookie").isEmpty());
+        assertEquals("1", httpHeaders.get("x-other"));
+    }
+
+    @Test
+    void parsedValuesAreSlices() {
+        ByteBuffer buffer = ByteBuffer.wrap("content-LENGTH: 42|X-Trace: abc".getBytes(StandardCharsets.US_ASCII));
+        httpHeaders.add(buffer, 0, 14, 16, 18);
+        httpHeaders.add(buffer, 19, 26, 28, 31);
+        buffer.put(16, (byte) '7');
+
+        assertEquals(42, httpHeaders.getLong(HttpHeaders.CONTENT_LENGTH));
+        assertTrue(httpHeaders.contains(HttpHeaders.CONTENT_LENGTH));
+        assertEquals("Content-Length", httpHeaders.name(0));
+        assertEquals("abc", httpHeaders.get("x-trace"));
+        assertEquals("X-Trace", httpHeaders.name(1));
+    }
+
+    @Test
+    void invalidNumber() {
+        httpHeaders.add(ByteBuffer.wrap("Content-Length: 4x".getBytes(StandardCharsets.US_ASCII)), 0, 14, 16, 18);
+        assertThrows(NumberFormatException.class, () -> httpHeaders.getLong(HttpHeaders.CONTENT_LENGTH));
+    }
+}
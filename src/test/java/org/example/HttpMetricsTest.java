@@ -0,0 +1,161 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class HttpMetricsTest {
+    TestServer server;
+    HttpClient client;
+    HttpMetrics metrics = new HttpMetrics();
+    HttpRequest request;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    void start(String body, RequestListener listener) throws Exception {
+        server = new TestServer(head -> TestServer.response(body));
+        client = spy(HttpClient.newBuilder().listener(listener).build());
+        doReturn(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.serverSocket.getLocalPort()))
+                .when(client).getSocketAddress(anyString(), anyInt());
+        request = HttpRequest.newBuilder(new URI("http://localhost/metrics")).build();
+    }
+
+    @Test
+    void histogramPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_500, histogram.mean(), 1);
+        assertEquals(500_000, histogram.valueAtPercentile(50), 500_000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(990_000, histogram.valueAtPercentile(99), 990_000 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(1_000_000, histogram.valueAtPercentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.valueAtPercentile(101));
+    }
+
+    @Test
+    void bucketsCoverEveryValue() {
+        for (long value : new long[] {0, 1, 31, 32, 63, 64, 1000, 123_456_789, LatencyHistogram.MAX_TRACKABLE_NANOS}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(bucket < LatencyHistogram.BUCKETS);
+            assertTrue(LatencyHistogram.highestValue(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValue(bucket - 1) < value);
+        }
+    }
+
+    @Test
+    void metricsAggregatePerRouteAndStatusClass() throws Exception {
+        start("metrics body", metrics);
+
+        for (int i = 0; i < 3; i++) {
+            client.send(request, HttpResponse.BodyHandlers.ofString());
+        }
+
+        String route = request.route();
+        assertEquals(Set.of(route), metrics.routes());
+        assertEquals(3, metrics.requestCount());
+        assertEquals(0, metrics.failureCount());
+        assertEquals(1, metrics.poolMisses());
+        assertEquals(2, metrics.poolHits());
+        assertEquals(1, metrics.histogram(route, HttpMetrics.Phase.DNS).count());
+        assertEquals(1, metrics.histogram(route, HttpMetrics.Phase.CONNECT).count());
+        assertEquals(3, metrics.histogram(route, HttpMetrics.Phase.FIRST_BYTE).count());
+        assertEquals(3, metrics.histogram(route, HttpMetrics.Phase.TOTAL).count());
+        assertEquals(3, metrics.histogram(route, 2).count());
+        assertEquals(0, metrics.histogram(route, 5).count());
+        assertEquals(3L * request.encodedHead().remaining(), metrics.bytesSent());
+        assertEquals(3L * TestServer.response("metrics body").length, metrics.bytesReceived());
+        assertEquals(0, metrics.histogram("http://unknown:80", HttpMetrics.Phase.TOTAL).count());
+    }
+
+    @Test
+    void listenerSeesOrderedPhases() throws Exception {
+        List<long[]> phases = new CopyOnWriteArrayList<>();
+        start("x".repeat(100_000), timings -> phases.add(new long[] {
+                timings.statusCode(), timings.dnsNanos(), timings.connectNanos(), timings.writeNanos(),
+                timings.firstByteNanos(), timings.bodyNanos(), timings.totalNanos(), timings.bytesReceived()}));
+
+        client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(1, phases.size());
+        long[] recorded = phases.get(0);
+        assertEquals(200, recorded[0]);
+        for (int i = 1; i < 6; i++) {
+            assertTrue(recorded[i] >= 0, "phase " + i);
+        }
+        assertTrue(recorded[6] >= recorded[1] + recorded[2] + recorded[3] + recorded[4] + recorded[5]);
+        assertTrue(recorded[7] > 100_000);
+    }
+
+    @Test
+    void streamedResponseIsRecordedWhenBodyCompletes() throws Exception {
+        start("streamed", metrics);
+
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(0, metrics.requestCount());
+        try (InputStream body = response.body()) {
+            body.readAllBytes();
+        }
+
+        assertEquals(1, metrics.requestCount());
+        assertEquals(1, metrics.histogram(request.route(), HttpMetrics.Phase.BODY).count());
+    }
+
+    @Test
+    void connectFailureIsRecorded() throws Exception {
+        start("unused", metrics);
+        doThrow(new ConnectException("refused")).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+
+        assertThrows(ConnectException.class, () -> client.send(request, HttpResponse.BodyHandlers.ofString()));
+
+        assertEquals(1, metrics.failureCount());
+        assertEquals(1, metrics.poolMisses());
+        assertEquals(1, metrics.histogram(request.route(), 0).count());
+        assertEquals(0, metrics.histogram(request.route(), HttpMetrics.Phase.CONNECT).count());
+    }
+
+    @Test
+    void recordingDoesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        request = HttpRequest.newBuilder(new URI("http://localhost/metrics")).build();
+        for (int i = 0; i < 100_000; i++) {
+            record(request);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            record(request);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(200_000, metrics.histogram(request.route(), 2).count());
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+    }
+
+    void record(HttpRequest request) {
+        RequestTimings timings = RequestTimings.start(metrics, request);
+        timings.writeStarted();
+        timings.written(100);
+        timings.headersRead(200);
+        timings.finish();
+    }
+}
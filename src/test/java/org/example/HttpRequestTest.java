@@ -3,10 +3,13 @@ package org.example;
 import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import java.io.*;
 import java.net.*;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 class HttpRequestTest {
     URI uri;
@@ -25,7 +28,7 @@ class HttpRequestTest {
         HttpRequest request = requestBuilder
                 .POST(HttpRequest.BodyPublishers.noBody())
                 .build();
-        String actualContentLength = request.headers().headers.get("Content-Length").get(0);
+        String actualContentLength = request.headers().firstValue("Content-Length").get();
         assertEquals("0", actualContentLength);
     }
 
@@ -36,7 +39,7 @@ class HttpRequestTest {
         HttpRequest request = requestBuilder
                 .POST(HttpRequest.BodyPublishers.ofString(body))
                 .build();
-        String actualContentLength = request.headers().headers.get("Content-Length").get(0);
+        String actualContentLength = request.headers().firstValue("Content-Length").get();
         assertEquals(String.valueOf(body.length()), actualContentLength);
     }
 
@@ -47,7 +50,7 @@ class HttpRequestTest {
         HttpRequest request = requestBuilder
                 .POST(HttpRequest.BodyPublishers.ofByteArray(body))
                 .build();
-        String actualContentLength = request.headers().headers.get("Content-Length").get(0);
+        String actualContentLength = request.headers().firstValue("Content-Length").get();
         assertEquals(String.valueOf(body.length), actualContentLength);
     }
 
@@ -58,19 +61,19 @@ class HttpRequestTest {
         HttpRequest request = requestBuilder
                 .POST(HttpRequest.BodyPublishers.ofByteArray(body, 1, 4))
                 .build();
-        String actualContentLength = request.headers().headers.get("Content-Length").get(0);
+        String actualContentLength = request.headers().firstValue("Content-Length").get();
         assertEquals("4", actualContentLength);
     }
 
     @Test
     @DisplayName("Tests FromFile content length")
-    void bodyPublisherFromFile() throws IOException {
-        File f = new File("file.txt");
-        Path filePath = f.toPath();
+    void bodyPublisherFromFile(@TempDir Path directory) throws IOException {
+        Path filePath = Files.writeString(directory.resolve("file.txt"), "Some body");
+        File f = filePath.toFile();
         HttpRequest request = requestBuilder
                 .POST(HttpRequest.BodyPublishers.fromFile(filePath))
                 .build();
-        String actualContentLength = request.headers().headers.get("Content-Length").get(0);
+        String actualContentLength = request.headers().firstValue("Content-Length").get();
         String expectedContentLength = String.valueOf(f.length());
         assertEquals(expectedContentLength, actualContentLength);
     }
@@ -83,21 +86,38 @@ class HttpRequestTest {
     }
 
     @Test
-    @DisplayName("Test ofInputStream content length")
-    void bodyPublisherOfInputStream() throws IOException {
+    @DisplayName("Test ofInputStream is sent chunked and read lazily")
+    void bodyPublisherOfInputStream() {
         byte[] body = "some string".getBytes();
+        int[] supplierCalls = new int[1];
         HttpRequest request = requestBuilder
-                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(body)))
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> {
+                    supplierCalls[0]++;
+                    return new ByteArrayInputStream(body);
+                }))
                 .build();
-        String actualContentLength = request.headers().headers.get("Content-Length").get(0);
-        assertEquals("0", actualContentLength);
+
+        assertTrue(request.headers().firstValue("Content-Length").isEmpty());
+        assertEquals("chunked", request.headers().firstValue("Transfer-Encoding").get());
+        assertEquals(0, supplierCalls[0]);
+    }
+
+    @Test
+    void replaceStreamingBodyWithFixedBody() {
+        HttpRequest request = requestBuilder
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[0])))
+                .PUT(HttpRequest.BodyPublishers.ofString("some string"))
+                .build();
+
+        assertTrue(request.headers().firstValue("Transfer-Encoding").isEmpty());
+        assertEquals(List.of("11"), request.headers().allValues("Content-Length"));
     }
 
     @Test
     void testDefaultHeaders1() {
         Map<String, String> expectedHeaders = generateExpectedHeaders();
         HttpRequest httpRequest = requestBuilder.build();
-        Map<String, List<String>> actualHeaders = httpRequest.headers().headers;
+        Map<String, List<String>> actualHeaders = httpRequest.headers().map();
         assertHeaders(expectedHeaders, actualHeaders);
     }
 
@@ -106,7 +126,7 @@ class HttpRequestTest {
         Map<String, String> expectedHeaders = generateExpectedHeaders();
         URI uri = new URI("https://postman-echo.com/get");
         HttpRequest httpRequest = HttpRequest.newBuilder().uri(uri).build();
-        Map<String, List<String>> actualHeaders = httpRequest.headers().headers;
+        Map<String, List<String>> actualHeaders = httpRequest.headers().map();
         assertHeaders(expectedHeaders, actualHeaders);
     }
 
@@ -125,8 +145,8 @@ class HttpRequestTest {
         Map<String, String> expectedHeaders = new HashMap<>();
         expectedHeaders.put("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8");
         expectedHeaders.put("Accept-Language", "en-US,en;q=0.5");
-        expectedHeaders.put("Accept-Encoding", "gzip, deflate, br");
-        expectedHeaders.put("Connection", "close");
+        expectedHeaders.put("Accept-Encoding", "gzip, deflate");
+        expectedHeaders.put("Connection", "keep-alive");
         expectedHeaders.put("Upgrade-Insecure-Requests", "1");
         expectedHeaders.put("User-Agent", "Java-http-client/11.0.6");
         expectedHeaders.put("Host", "postman-echo.com");
@@ -135,9 +155,9 @@ class HttpRequestTest {
 
     @Test
     void changeDefaultHeader() {
-        HttpRequest request = requestBuilder.setHeader("Connection", "keep-alive").build();
-        String connectionHeader = request.headers().headers.get("Connection").get(0);
-        assertEquals("keep-alive", connectionHeader);
+        HttpRequest request = requestBuilder.setHeader("Connection", "close").build();
+        String connectionHeader = request.headers().firstValue("Connection").get();
+        assertEquals("close", connectionHeader);
     }
 
     @Test
@@ -208,6 +228,110 @@ class HttpRequestTest {
     void bodyPubisher() {
         HttpRequest request = requestBuilder.POST(HttpRequest.BodyPublishers.noBody()).build();
         HttpRequest.BodyPublisher bodyPublisher = request.bodyPublisher().get();
-        assertNull(bodyPublisher.body);
+        assertEquals(0, bodyPublisher.contentLength());
+    }
+
+    static byte[] collect(HttpRequest.BodyPublisher publisher) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                out.writeBytes(bytes);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.get(5, TimeUnit.SECONDS);
+        return out.toByteArray();
+    }
+
+    @Test
+    void publishersEmitTheirBytes() throws Exception {
+        assertArrayEquals("some string".getBytes(), collect(HttpRequest.BodyPublishers.ofString("some string")));
+        assertArrayEquals(new byte[0], collect(HttpRequest.BodyPublishers.noBody()));
+        byte[] streamed = "s".repeat(HttpClient.CHUNK_SIZE * 2 + 1).getBytes();
+        assertArrayEquals(streamed, collect(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(streamed))));
+    }
+
+    @Test
+    void concatContentLength() {
+        HttpRequest.BodyPublisher known = HttpRequest.BodyPublishers.concat(
+                HttpRequest.BodyPublishers.ofString("abc"), HttpRequest.BodyPublishers.ofString("de"));
+        HttpRequest.BodyPublisher unknown = HttpRequest.BodyPublishers.concat(
+                HttpRequest.BodyPublishers.ofString("abc"),
+                HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[1])));
+
+        assertEquals(5, known.contentLength());
+        assertEquals(-1, unknown.contentLength());
+        assertEquals("5", requestBuilder.POST(known).build().headers().firstValue("Content-Length").get());
+        assertEquals(0, HttpRequest.BodyPublishers.concat().contentLength());
+    }
+
+    @Test
+    void concatEmitsPartsInOrder() throws Exception {
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.concat(
+                HttpRequest.BodyPublishers.ofString("one,"),
+                HttpRequest.BodyPublishers.noBody(),
+                HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream("two,".getBytes())),
+                HttpRequest.BodyPublishers.ofByteArray("three".getBytes()));
+
+        assertEquals("one,two,three", new String(collect(publisher)));
+        assertEquals("one,two,three", new String(collect(publisher)));
+    }
+
+    @Test
+    void fromPublisherRejectsInvalidLength() {
+        SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+        assertThrows(IllegalArgumentException.class, () -> HttpRequest.BodyPublishers.fromPublisher(publisher, 0));
+        assertEquals(-1, HttpRequest.BodyPublishers.fromPublisher(publisher).contentLength());
+        assertEquals(7, HttpRequest.BodyPublishers.fromPublisher(publisher, 7).contentLength());
+    }
+
+    @Test
+    void nonPositiveRequestSignalsError() throws Exception {
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        HttpRequest.BodyPublishers.ofString("body").subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(-1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                error.complete(null);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.complete(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                error.complete(null);
+            }
+        });
+
+        assertInstanceOf(IllegalArgumentException.class, error.get(5, TimeUnit.SECONDS));
     }
-}
\ No newline at end of file
+}
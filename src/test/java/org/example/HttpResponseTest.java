@@ -3,8 +3,12 @@ package org.example;
 import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import java.io.*;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
 
 class HttpResponseTest {
@@ -40,14 +44,24 @@ class HttpResponseTest {
     @Test
     void invalidFirstLine() {
         String responseStr = """
-                HTTP/1.1 200 OK adakjsd
+                HTTP/1.1
                 Content-Type: text/html; charset=utf8
                 
                 some body
                 """;
         InputStream in = new ByteArrayInputStream(responseStr.getBytes());
         HttpResponse.BodyHandler<String> bodyHandler = HttpResponse.BodyHandlers.ofString();
-        assertThrows(IOException.class, () -> new HttpResponse<>(in, bodyHandler), "Invalid first line");
+        assertThrows(IOException.class, () -> new HttpResponse<>(in, bodyHandler), "Invalid status code");
+    }
+
+    @Test
+    void reasonPhraseMayContainSpaces() throws IOException {
+        String responseStr = "HTTP/1.1 404 Not Found\r\nContent-Length: 4\r\n\r\ngone";
+        InputStream in = new ByteArrayInputStream(responseStr.getBytes());
+        HttpResponse<String> response = new HttpResponse<>(in, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(404, response.statusCode());
+        assertEquals("gone", response.body());
     }
 
     @Test
@@ -90,7 +104,7 @@ class HttpResponseTest {
     void testHeaders() {
         Map<String, String> expectedHeaders = Map.of("Content-Type", "text/html; charset=utf8", "Content-Length", "9");
         for (Map.Entry<String, String> expectedHeader : expectedHeaders.entrySet()) {
-            List<String> headerValue = validResponse.headers().headers.get(expectedHeader.getKey());
+            List<String> headerValue = validResponse.headers().allValues(expectedHeader.getKey());
             assertAll(
                     () -> assertNotNull(headerValue),
                     () -> assertEquals(1, headerValue.size()),
@@ -118,10 +132,271 @@ class HttpResponseTest {
     }
 
     @Test
-    void testPathBody() throws IOException {
-        String filePathStr = "file.txt";
-        Path filePath = Path.of(filePathStr);
+    void testPathBody(@TempDir Path directory) throws IOException {
+        Path filePath = directory.resolve("file.txt");
         HttpResponse<Path> validFileResponse = getValidFileResponse(filePath);
         assertEquals(filePath, validFileResponse.body());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBinaryFileBody() throws IOException {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, (byte) 0xff};
+        byte[] head = ("HTTP/1.1 200 OK\r\nContent-Type: image/png\r\nContent-Length: " + png.length + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        Path filePath = Files.createTempFile("body", ".png");
+        try {
+            InputStream in = new ByteArrayInputStream(TestServer.concat(head, png));
+            new HttpResponse<>(in, HttpResponse.BodyHandlers.ofFile(filePath));
+            assertArrayEquals(png, Files.readAllBytes(filePath));
+        } finally {
+            Files.delete(filePath);
+        }
+    }
+
+    @Test
+    void lowercaseFramingHeaders() throws IOException {
+        String responseStr = "HTTP/1.1 200 OK\r\ncontent-length: 9\r\nconnection: CLOSE\r\n\r\nsome bodyextra";
+        HttpInput input = new HttpInput(new ByteArrayInputStream(responseStr.getBytes()));
+        HttpResponse<String> response = new HttpResponse<>(input, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals("some body", response.body());
+        assertEquals("9", response.headers().firstValue("Content-Length").get());
+        assertFalse(response.keepAlive());
+    }
+
+    @Test
+    void testHeadSplitAcrossReads() throws IOException {
+        String responseStr = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nX-Long: " + "v".repeat(40)
+                + "\r\nContent-Length: 9\r\n\r\nsome body";
+        var channel = Channels.newChannel(new ByteArrayInputStream(responseStr.getBytes()));
+        HttpInput input = new HttpInput(ByteBuffer.allocate(64).flip(), channel);
+        HttpResponse<String> response = new HttpResponse<>(input, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals("some body", response.body());
+        assertEquals("v".repeat(40), response.headers().firstValue("X-Long").get());
+    }
+
+    @Test
+    void testHeadLineTooLong() {
+        String responseStr = "HTTP/1.1 200 OK\r\nX-Long: " + "v".repeat(100) + "\r\n\r\n";
+        var channel = Channels.newChannel(new ByteArrayInputStream(responseStr.getBytes()));
+        HttpInput input = new HttpInput(ByteBuffer.allocate(64).flip(), channel);
+        assertThrows(IOException.class, () -> new HttpResponse<>(input, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @Test
+    void testBackToBackResponses() throws IOException {
+        byte[] first = TestServer.response("first");
+        byte[] second = TestServer.response("second");
+        HttpInput input = new HttpInput(new ByteArrayInputStream(TestServer.concat(first, second)));
+
+        assertEquals("first", new HttpResponse<>(input, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals("second", new HttpResponse<>(input, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    @Test
+    void testTruncatedBody() {
+        String responseStr = "HTTP/1.1 200 OK\r\nContent-Length: 20\r\n\r\nsome body";
+        InputStream in = new ByteArrayInputStream(responseStr.getBytes());
+        assertThrows(EOFException.class, () -> new HttpResponse<>(in, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @Test
+    void testByteArrayBody() throws IOException {
+        InputStream in = new ByteArrayInputStream(TestServer.response("some body"));
+        HttpResponse<byte[]> response = new HttpResponse<>(in, HttpResponse.BodyHandlers.ofByteArray());
+        assertArrayEquals("some body".getBytes(), response.body());
+    }
+
+    @Test
+    void testChunkedBody() throws IOException {
+        String responseStr = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "4\r\nsome\r\n5\r\n body\r\n0\r\nChecksum: abc\r\n\r\n";
+        InputStream in = new ByteArrayInputStream(responseStr.getBytes());
+        HttpResponse<String> response = new HttpResponse<>(in, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals("some body", response.body());
+        assertEquals("abc", response.trailers().firstValue("Checksum").get());
+        assertTrue(response.keepAlive());
+    }
+
+    @Test
+    void testChunkedBackToBack() throws IOException {
+        String chunked = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nsome\r\n0\r\n\r\n";
+        byte[] bytes = TestServer.concat(chunked.getBytes(), TestServer.response("next"));
+        HttpInput input = new HttpInput(new ByteArrayInputStream(bytes));
+
+        new HttpResponse<>(input, (body, contentLength) -> null);
+        assertEquals("next", new HttpResponse<>(input, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    @Test
+    void testChunkedBodyStreamsChunks() throws IOException {
+        Deque<String> segments = new ArrayDeque<>(List.of(
+                "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n", "4\r\nsome\r\n", "5\r\n body\r\n", "0\r\n\r\n"));
+        ReadableByteChannel channel = new ReadableByteChannel() {
+            public int read(ByteBuffer dst) {
+                String segment = segments.poll();
+                if (segment == null) {
+                    return -1;
+                }
+                dst.put(segment.getBytes());
+                return segment.length();
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+
+        List<String> reads = new ArrayList<>();
+        new HttpResponse<>(new HttpInput(channel), (body, contentLength) -> {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            while (body.read(buffer) != -1) {
+                reads.add(new String(buffer.array(), 0, buffer.position()) + "/" + segments.size());
+                buffer.clear();
+            }
+            return null;
+        });
+
+        assertEquals(List.of("some/2", " body/1"), reads);
+    }
+
+    @Test
+    void testTruncatedChunkedBody() {
+        String responseStr = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nso";
+        InputStream in = new ByteArrayInputStream(responseStr.getBytes());
+        assertThrows(EOFException.class, () -> new HttpResponse<>(in, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @Test
+    void testCloseDelimitedBody() throws IOException {
+        String responseStr = "HTTP/1.1 200 OK\r\nConnection: close\r\n\r\nsome body";
+        InputStream in = new ByteArrayInputStream(responseStr.getBytes());
+        HttpResponse<String> response = new HttpResponse<>(in, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals("some body", response.body());
+        assertFalse(response.keepAlive());
+    }
+
+    HttpResponse<Path> downloadFile(byte[] content, Path filePath, boolean preallocate) throws IOException {
+        byte[] head = ("HTTP/1.1 200 OK\r\nContent-Length: " + content.length + "\r\n\r\n").getBytes();
+        InputStream in = new ByteArrayInputStream(TestServer.concat(head, content));
+        var bodyHandler = HttpResponse.BodyHandlers.ofFile(filePath, HttpResponse.FsyncPolicy.DATA, preallocate);
+        return new HttpResponse<>(in, bodyHandler);
+    }
+
+    @Test
+    void testLargeFileBody() throws IOException {
+        byte[] content = new byte[3 << 20];
+        new Random(7).nextBytes(content);
+        Path filePath = Files.createTempFile("download", ".bin");
+        try {
+            assertEquals(filePath, downloadFile(content, filePath, true).body());
+            assertArrayEquals(content, Files.readAllBytes(filePath));
+        } finally {
+            Files.delete(filePath);
+        }
+    }
+
+    @Test
+    void testTruncatedPreallocatedFileBody() throws IOException {
+        byte[] head = "HTTP/1.1 200 OK\r\nContent-Length: 1000\r\n\r\nsome body".getBytes();
+        Path filePath = Files.createTempFile("download", ".bin");
+        try {
+            var bodyHandler = HttpResponse.BodyHandlers.ofFile(filePath, HttpResponse.FsyncPolicy.NONE, true);
+            assertThrows(EOFException.class, () -> new HttpResponse<>(new ByteArrayInputStream(head), bodyHandler));
+        } finally {
+            Files.delete(filePath);
+        }
+    }
+
+    @Test
+    void testFileBodyOverwritesExistingFile() throws IOException {
+        Path filePath = Files.createTempFile("download", ".bin");
+        try {
+            Files.write(filePath, new byte[100]);
+            downloadFile("some body".getBytes(), filePath, false);
+            assertEquals("some body", Files.readString(filePath));
+        } finally {
+            Files.delete(filePath);
+        }
+    }
+
+    @Test
+    void testDiscardingBodyConsumesMessage() throws IOException {
+        byte[] messages = "HTTP/1.1 200 OK\r\nContent-Length: 9\r\n\r\nsome bodyHTTP/1.1 404 NotFound\r\nContent-Length: 0\r\n\r\n".getBytes();
+        HttpInput input = new HttpInput(new ByteArrayInputStream(messages));
+
+        HttpResponse<Void> discarded = new HttpResponse<>(input, HttpResponse.BodyHandlers.discarding());
+        assertNull(discarded.body());
+        assertEquals(404, new HttpResponse<>(input, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void byteBufferBodyIsSizedFromContentLength() throws IOException {
+        long inUse = BufferPool.DEFAULT.inUse();
+        InputStream in = new ByteArrayInputStream("HTTP/1.1 200 OK\r\nContent-Length: 9\r\n\r\nsome body".getBytes());
+
+        try (HttpResponse<ByteBuffer> response = new HttpResponse<>(in, HttpResponse.BodyHandlers.ofByteBuffer())) {
+            ByteBuffer body = response.body();
+            assertTrue(body.isDirect());
+            assertTrue(body.isReadOnly());
+            assertEquals(9, body.remaining());
+            assertEquals("some body", StandardCharsets.UTF_8.decode(body).toString());
+            assertEquals(inUse + 1, BufferPool.DEFAULT.inUse());
+        }
+
+        assertEquals(inUse, BufferPool.DEFAULT.inUse());
+    }
+
+    @Test
+    void byteBufferBodyGrowsForChunkedBody() throws IOException {
+        byte[] chunk = new byte[5000];
+        Arrays.fill(chunk, (byte) 'x');
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        message.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes());
+        for (int i = 0; i < 4; i++) {
+            message.write("1388\r\n".getBytes());
+            message.write(chunk);
+            message.write("\r\n".getBytes());
+        }
+        message.write("0\r\n\r\n".getBytes());
+        long inUse = BufferPool.DEFAULT.inUse();
+
+        HttpResponse<ByteBuffer> response = new HttpResponse<>(new ByteArrayInputStream(message.toByteArray()),
+                HttpResponse.BodyHandlers.ofByteBuffer());
+
+        assertEquals(20_000, response.body().remaining());
+        assertEquals(32 * 1024, response.body().capacity());
+        assertEquals('x', response.body().get(19_999));
+        response.close();
+        response.close();
+        assertEquals(inUse, BufferPool.DEFAULT.inUse());
+    }
+
+    @Test
+    void byteBufferHandlerCalledDirectlyDoesNotHoldPooledMemory() throws IOException {
+        long inUse = BufferPool.DEFAULT.inUse();
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream("raw body".getBytes()));
+
+        ByteBuffer body = HttpResponse.BodyHandlers.ofByteBuffer().readBody(channel, -1);
+
+        assertTrue(body.isDirect());
+        assertTrue(body.isReadOnly());
+        assertEquals("raw body", StandardCharsets.UTF_8.decode(body).toString());
+        assertEquals(inUse, BufferPool.DEFAULT.inUse());
+    }
+
+    @Test
+    void byteBufferBodyIsReleasedOnFailure() {
+        long inUse = BufferPool.DEFAULT.inUse();
+        InputStream in = new ByteArrayInputStream("HTTP/1.1 200 OK\r\nContent-Length: 20\r\n\r\ntruncated".getBytes());
+
+        assertThrows(EOFException.class, () -> new HttpResponse<>(in, HttpResponse.BodyHandlers.ofByteBuffer()));
+        assertEquals(inUse, BufferPool.DEFAULT.inUse());
+    }
+}
@@ -0,0 +1,138 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.net.*;
+import javax.net.ssl.*;
+
+class HttpsTest {
+    SSLContext sslContext;
+    TestServer server;
+    HttpClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sslContext = TestServer.sslContext();
+        server = TestServer.secure(sslContext, head -> TestServer.response("secure body"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+    }
+
+    HttpClient.Builder builder() throws UnknownHostException {
+        return HttpClient.newBuilder()
+                .sslContext(sslContext)
+                .resolver(new StaticResolver().map("localhost", "127.0.0.1"));
+    }
+
+    HttpRequest request() throws URISyntaxException {
+        return HttpRequest.newBuilder(new URI("https://localhost:" + server.port() + "/get")).build();
+    }
+
+    String send(HttpRequest request) throws IOException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    SSLSession takeIdleSession(HttpRequest request) throws IOException {
+        Connection connection = client.connectionPool.acquire(request.route(), () -> {
+            throw new IOException("No idle connection");
+        });
+        client.connectionPool.discard(connection);
+        return ((SSLSocket) connection.socket).getSession();
+    }
+
+    @Test
+    void sendOverTls() throws Exception {
+        client = builder().build();
+        HttpRequest request = request();
+
+        assertEquals("secure body", send(request));
+        assertTrue(server.requestHeads.get(0).contains("Host: localhost:" + server.port() + "\r\n"));
+    }
+
+    @Test
+    void reuseTlsConnection() throws Exception {
+        client = builder().build();
+        HttpRequest request = request();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("secure body", send(request));
+        }
+
+        assertEquals(3, server.requests.get());
+        assertEquals(1, server.connections.get());
+        assertEquals(1, client.connectionPool.idleCount(request.route()));
+    }
+
+    @Test
+    void reconnectResumesSession() throws Exception {
+        for (String protocol : new String[] {"TLSv1.2", "TLSv1.3"}) {
+            client = builder().tlsProtocols(protocol).build();
+            HttpRequest request = request();
+
+            send(request);
+            SSLSession first = takeIdleSession(request);
+            send(request);
+            SSLSession second = takeIdleSession(request);
+
+            assertEquals(protocol, second.getProtocol());
+            assertEquals(first.getCreationTime(), second.getCreationTime());
+            if (protocol.equals("TLSv1.2")) {
+                assertArrayEquals(first.getId(), second.getId());
+            }
+            client.close();
+        }
+    }
+
+    @Test
+    void configuredCipherSuite() throws Exception {
+        String cipherSuite = "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256";
+        client = builder().tlsProtocols("TLSv1.2").tlsCipherSuites(cipherSuite).build();
+        HttpRequest request = request();
+
+        send(request);
+        assertEquals(cipherSuite, takeIdleSession(request).getCipherSuite());
+    }
+
+    @Test
+    void untrustedCertificateIsRejected() throws Exception {
+        client = HttpClient.newBuilder().resolver(new StaticResolver().map("localhost", "127.0.0.1")).build();
+
+        assertThrows(SSLHandshakeException.class, () -> send(request()));
+    }
+
+    @Test
+    void hostnameIsVerified() throws Exception {
+        client = HttpClient.newBuilder()
+                .sslContext(sslContext)
+                .resolver(new StaticResolver().map("other.test", "127.0.0.1"))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(new URI("https://other.test:" + server.port() + "/get")).build();
+
+        assertThrows(SSLHandshakeException.class, () -> send(request));
+    }
+
+    @Test
+    void plainHttpUsesUriPort() throws Exception {
+        try (TestServer plainServer = TestServer.withBody("plain body")) {
+            client = builder().build();
+            HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost:" + plainServer.port() + "/get")).build();
+
+            assertEquals("plain body", send(request));
+            assertEquals("http://localhost:" + plainServer.port(), request.route());
+        }
+    }
+
+    @Test
+    void defaultPorts() throws Exception {
+        assertEquals(443, HttpRequest.newBuilder(new URI("https://example.com/")).build().port());
+        assertEquals(80, HttpRequest.newBuilder(new URI("http://example.com/")).build().port());
+        assertEquals("https://example.com:443", HttpRequest.newBuilder(new URI("https://example.com/")).build().route());
+    }
+}
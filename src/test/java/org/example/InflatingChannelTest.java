@@ -0,0 +1,122 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.*;
+
+class InflatingChannelTest {
+    String body;
+
+    @BeforeEach
+    void setUp() {
+        body = "some body ".repeat(5000);
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (var deflater = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    String inflate(byte[] compressed, boolean gzip) throws IOException {
+        var source = Channels.newChannel(new ByteArrayInputStream(compressed));
+        try (var channel = new InflatingChannel(source, gzip)) {
+            return new String(HttpResponse.readAllBytes(channel, -1), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void inflateGzip() throws IOException {
+        assertEquals(body, inflate(gzip(body.getBytes()), true));
+    }
+
+    @Test
+    void inflateGzipWithFileName() throws IOException {
+        byte[] compressed = deflate(body.getBytes(), true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] {0x1f, (byte) 0x8b, 8, 8, 0, 0, 0, 0, 0, (byte) 0xff});
+        out.write("body.txt\0".getBytes(StandardCharsets.ISO_8859_1));
+        out.write(compressed);
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes());
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue()).putInt(body.length());
+        out.write(trailer.array());
+
+        assertEquals(body, inflate(out.toByteArray(), true));
+    }
+
+    @Test
+    void inflateZlibDeflate() throws IOException {
+        assertEquals(body, inflate(deflate(body.getBytes(), false), false));
+    }
+
+    @Test
+    void inflateRawDeflate() throws IOException {
+        assertEquals(body, inflate(deflate(body.getBytes(), true), false));
+    }
+
+    @Test
+    void corruptGzipTrailer() throws IOException {
+        byte[] compressed = gzip(body.getBytes());
+        compressed[compressed.length - 8] ^= 1;
+        assertThrows(ZipException.class, () -> inflate(compressed, true));
+    }
+
+    @Test
+    void truncatedGzip() throws IOException {
+        byte[] compressed = gzip(body.getBytes());
+        byte[] truncated = java.util.Arrays.copyOf(compressed, compressed.length / 2);
+        assertThrows(EOFException.class, () -> inflate(truncated, true));
+    }
+
+    @Test
+    void notGzip() {
+        assertThrows(ZipException.class, () -> inflate("plain text body".getBytes(), true));
+    }
+
+    @Test
+    void inflaterIsReturnedToPool() throws IOException {
+        inflate(gzip(body.getBytes()), true);
+        assertTrue(InflaterPool.pooled(true) > 0);
+    }
+
+    @Test
+    void gzipResponse() throws IOException {
+        byte[] compressed = gzip(body.getBytes());
+        byte[] head = ("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nContent-Length: " + compressed.length + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        InputStream in = new ByteArrayInputStream(TestServer.concat(head, compressed));
+        HttpResponse<String> response = new HttpResponse<>(in, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(body, response.body());
+        assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+        assertTrue(response.keepAlive());
+    }
+
+    @Test
+    void gzipResponseWithoutDecompression() throws IOException {
+        byte[] compressed = gzip(body.getBytes());
+        byte[] head = ("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nContent-Length: " + compressed.length + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        HttpInput input = new HttpInput(new ByteArrayInputStream(TestServer.concat(head, compressed)));
+        HttpResponse<byte[]> response = new HttpResponse<>(input, HttpResponse.BodyHandlers.ofByteArray(), false);
+
+        assertArrayEquals(compressed, response.body());
+    }
+}
@@ -0,0 +1,120 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.List;
+
+class LoadGeneratorTest {
+    LoopbackServer server;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void parsesOptions() {
+        LoadGenerator.Options options = LoadGenerator.Options.parse("--url", "http://localhost:8080/", "--rps", "250",
+                "--duration", "500ms", "--max-connections", "4");
+
+        assertEquals(URI.create("http://localhost:8080/"), options.url);
+        assertEquals(250, options.rps);
+        assertEquals(Duration.ofMillis(500), options.duration);
+        assertEquals(4, options.maxConnections);
+
+        LoadGenerator.Options local = LoadGenerator.Options.parse("--local", "1024,5", "--concurrency", "8");
+        assertEquals(1024, local.localPayloadSize);
+        assertEquals(Duration.ofMillis(5), local.localLatency);
+        assertEquals(8, local.concurrency);
+        assertEquals(Duration.ofSeconds(10), local.duration);
+        assertEquals(Duration.ofMinutes(2), LoadGenerator.parseDuration("2m"));
+    }
+
+    @Test
+    void rejectsInvalidOptions() {
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Options.parse());
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Options.parse("--url"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Options.parse("--bogus", "1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> LoadGenerator.Options.parse("--local", "0", "--rps", "10", "--concurrency", "2"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Options.parse("--local", "0", "--rps", "0"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Options.parse("--local", "0", "--duration", "10x"));
+        assertTrue(LoadGenerator.Options.parse("--help").help);
+    }
+
+    @Test
+    void parsesTemplates() {
+        String text = """
+                GET /items?page=1
+                Accept: application/json
+
+                ### create
+                POST /items
+                Content-Type: application/json
+                Content-Length: 999
+
+                {"name": "item"}
+                ###
+                DELETE http://other.example/items/1
+                """;
+
+        List<HttpRequest> requests = LoadGenerator.parseTemplates(text, URI.create("http://localhost:8080/"));
+
+        assertEquals(3, requests.size());
+        assertEquals(URI.create("http://localhost:8080/items?page=1"), requests.get(0).uri());
+        assertEquals(List.of("application/json"), requests.get(0).headers().allValues("Accept"));
+        assertEquals("POST", requests.get(1).method());
+        assertTrue(requests.get(1).headers().allValues("Content-Length").stream().noneMatch("999"::equals));
+        assertEquals("DELETE", requests.get(2).method());
+        assertEquals("other.example", requests.get(2).uri().getHost());
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseTemplates("PATCH /x", URI.create("http://h/")));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseTemplates("GET /x", null));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseTemplates("###\n", URI.create("http://h/")));
+    }
+
+    @Test
+    void openLoopSendsAtScheduledRate() throws Exception {
+        server = new LoopbackServer(64, Duration.ZERO);
+        try (HttpClient client = HttpClient.newBuilder().build()) {
+            LoadGenerator generator = new LoadGenerator(client, List.of(HttpRequest.newBuilder(server.uri("/")).build()));
+
+            LoadGenerator.Report report = generator.openLoop(200, Duration.ofMillis(300));
+
+            assertEquals(60, report.scheduled);
+            assertEquals(60, report.completed);
+            assertEquals(0, report.errors);
+            assertEquals(60L, report.statuses.get(200));
+            assertEquals(60, server.requestCount());
+            assertTrue(report.elapsedNanos >= Duration.ofMillis(295).toNanos());
+        }
+    }
+
+    @Test
+    void runsClosedLoopAgainstLocalServerFromTemplate(@TempDir Path directory) throws Exception {
+        Path template = directory.resolve("requests.http");
+        Files.writeString(template, "GET /a\n###\nPOST /b\n\npayload\n");
+        LoadGenerator.Options options = LoadGenerator.Options.parse("--local", "16", "--template", template.toString(),
+                "--concurrency", "2", "--duration", "200ms");
+
+        LoadGenerator.Report report = LoadGenerator.run(options);
+
+        assertTrue(report.completed > 0);
+        assertEquals(report.scheduled, report.completed);
+        assertEquals(0, report.errors);
+        assertEquals(report.completed, report.metrics.requestCount());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        report.print(new PrintStream(out, true, StandardCharsets.UTF_8));
+        String printed = out.toString(StandardCharsets.UTF_8);
+        assertTrue(printed.contains("p99.9"), printed);
+        assertTrue(printed.contains("200=" + report.completed), printed);
+    }
+}
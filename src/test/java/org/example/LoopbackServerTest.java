@@ -0,0 +1,65 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.time.Duration;
+
+class LoopbackServerTest {
+    LoopbackServer server;
+    HttpClient client = HttpClient.newBuilder().build();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void servesConfiguredPayloadOnKeepAliveConnection() throws Exception {
+        server = new LoopbackServer(1000, Duration.ZERO);
+        HttpRequest request = HttpRequest.newBuilder(server.uri("/payload")).build();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("x".repeat(1000), client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        }
+
+        assertEquals(3, server.requestCount());
+        assertEquals(1, client.connectionPool.idleCount(request.route()));
+    }
+
+    @Test
+    void skipsFixedAndChunkedRequestBodies() throws Exception {
+        server = new LoopbackServer(2, Duration.ZERO);
+        HttpRequest fixed = HttpRequest.newBuilder(server.uri("/fixed"))
+                .POST(HttpRequest.BodyPublishers.ofString("y".repeat(5000)))
+                .build();
+        HttpRequest chunked = HttpRequest.newBuilder(server.uri("/chunked"))
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[40_000])))
+                .build();
+
+        assertEquals("xx", client.send(fixed, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals("xx", client.send(chunked, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals("xx", client.send(fixed, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals(3, server.requestCount());
+    }
+
+    @Test
+    void delaysResponsesByLatency() throws Exception {
+        server = new LoopbackServer(0, Duration.ofMillis(50));
+        HttpRequest request = HttpRequest.newBuilder(server.uri("/slow")).build();
+
+        long start = System.nanoTime();
+        assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+    }
+
+    @Test
+    void invalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new LoopbackServer(-1, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new LoopbackServer(0, Duration.ofMillis(-1)));
+    }
+}
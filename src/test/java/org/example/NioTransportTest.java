@@ -0,0 +1,231 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class NioTransportTest {
+    TestServer server;
+    HttpClient client;
+    HttpRequest request;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = TestServer.withBody("some body");
+        client = nioClient(HttpClient.newBuilder().nioEventLoops(2));
+        request = HttpRequest.newBuilder(new URI("http://localhost/get")).build();
+    }
+
+    HttpClient nioClient(HttpClient.Builder builder) throws UnknownHostException {
+        HttpClient nioClient = spy(builder.build());
+        doAnswer(invocation -> new InetSocketAddress(server.serverSocket.getInetAddress(), server.port()))
+                .when(nioClient).getSocketAddress(anyString(), anyInt());
+        return nioClient;
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void send() throws IOException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertEquals("some body", response.body());
+    }
+
+    @Test
+    void reuseKeepAliveConnection() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            assertEquals("some body", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        }
+
+        assertEquals(3, server.requests.get());
+        assertEquals(1, server.connections.get());
+        assertEquals(1, client.nioTransport.idleCount(request.route()));
+    }
+
+    @Test
+    void manyConcurrentRequests() throws Exception {
+        client.close();
+        client = nioClient(HttpClient.newBuilder().nioEventLoops(2).maxInFlight(64));
+
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<HttpResponse<String>> future : futures) {
+            assertEquals("some body", future.get(10, TimeUnit.SECONDS).body());
+        }
+        assertTrue(server.connections.get() <= 64);
+    }
+
+    @Test
+    void responseSplitAcrossReads() throws Exception {
+        server.close();
+        String body = "x".repeat(100_000);
+        server = TestServer.withBody(body);
+
+        assertEquals(body, client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    @Test
+    void closeDelimitedResponse() throws Exception {
+        server.close();
+        server = new TestServer(head -> "HTTP/1.1 200 OK\r\nConnection: close\r\n\r\nsome body"
+                .getBytes(StandardCharsets.ISO_8859_1));
+        HttpRequest closeRequest = HttpRequest.newBuilder(new URI("http://localhost/get"))
+                .setHeader("Connection", "close")
+                .build();
+
+        assertEquals("some body", client.send(closeRequest, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals(0, client.nioTransport.idleCount(request.route()));
+    }
+
+    @Test
+    void chunkedResponse() throws Exception {
+        server.close();
+        server = new TestServer(head -> ("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "4\r\nsome\r\n5\r\n body\r\n0\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals("some body", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        }
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void replayAfterServerDropsIdleConnection() throws Exception {
+        client.send(request, HttpResponse.BodyHandlers.ofString());
+        server.dropConnections();
+
+        assertEquals("some body", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    void uploadFile() throws Exception {
+        server.close();
+        server = TestServer.withBody("ok");
+        Path file = HttpClientTest.randomFile(4 << 20);
+        try {
+            HttpRequest upload = HttpRequest.newBuilder(new URI("http://localhost/upload"))
+                    .PUT(HttpRequest.BodyPublishers.fromFile(file))
+                    .build();
+
+            assertEquals("ok", client.send(upload, HttpResponse.BodyHandlers.ofString()).body());
+            assertArrayEquals(Files.readAllBytes(file), server.requestBodies.get(0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void eventLoopSurvivesFailingExchange() throws Exception {
+        client.close();
+        AtomicInteger failures = new AtomicInteger(1);
+        client = nioClient(HttpClient.newBuilder().nioEventLoops(1).executor(task -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("Handler failed");
+            }
+            ForkJoinPool.commonPool().execute(task);
+        }));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals("some body", client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .get(5, TimeUnit.SECONDS).body());
+    }
+
+    @Test
+    void connectionRefused() throws Exception {
+        server.close();
+        assertThrows(IOException.class, () -> client.send(request, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @Test
+    void bodyIsDeliveredBeforeItIsComplete() throws Exception {
+        CountDownLatch rest = new CountDownLatch(1);
+        try (ServerSocket slow = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread serverThread = new Thread(() -> {
+                try (Socket socket = slow.accept()) {
+                    InputStream in = socket.getInputStream();
+                    for (int matched = 0; matched < 4; ) {
+                        int b = in.read();
+                        matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : 0;
+                    }
+                    OutputStream out = socket.getOutputStream();
+                    out.write("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nfirst".getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                    rest.await(10, TimeUnit.SECONDS);
+                    out.write("-last".getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                } catch (IOException | InterruptedException ignored) {
+                }
+            });
+            serverThread.start();
+            doAnswer(invocation -> new InetSocketAddress(slow.getInetAddress(), slow.getLocalPort()))
+                    .when(client).getSocketAddress(anyString(), anyInt());
+
+            HttpResponse<InputStream> response = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                    .get(5, TimeUnit.SECONDS);
+            try (InputStream body = response.body()) {
+                assertEquals("first", new String(body.readNBytes(5), StandardCharsets.ISO_8859_1));
+                rest.countDown();
+                assertEquals("-last", new String(body.readAllBytes(), StandardCharsets.ISO_8859_1));
+            }
+            serverThread.join();
+        }
+    }
+
+    @Test
+    void slowConsumerBoundsBufferedBody() throws Exception {
+        server.close();
+        int length = 4 << 20;
+        server = TestServer.withBody("x".repeat(length));
+        long allocatedBytes = client.bufferPool().allocatedBytes();
+
+        HttpResponse<InputStream> response = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .get(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        assertTrue(client.bufferPool().allocatedBytes() - allocatedBytes < ResponsePipe.HIGH_WATER_BYTES * 4,
+                "allocated " + (client.bufferPool().allocatedBytes() - allocatedBytes) + " bytes");
+
+        try (InputStream body = response.body()) {
+            assertEquals(length, body.readAllBytes().length);
+        }
+        assertTrue(client.bufferPool().allocatedBytes() - allocatedBytes < ResponsePipe.HIGH_WATER_BYTES * 4);
+    }
+
+    @Test
+    void oversizedHeadIsRejected() throws Exception {
+        server.close();
+        server = new TestServer(head -> ("HTTP/1.1 200 OK\r\nX-Padding: " + "p".repeat(100_000) + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+
+        IOException e = assertThrows(IOException.class, () -> client.send(request, HttpResponse.BodyHandlers.ofString()));
+        assertTrue(e.getMessage().contains("Response head exceeds"), e.getMessage());
+    }
+
+    @Test
+    void invalidEventLoops() {
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().nioEventLoops(0));
+        assertThrows(IllegalStateException.class, () -> HttpClient.newBuilder().nioEventLoops(1).pipelining(2).build());
+        assertThrows(IllegalStateException.class,
+                () -> HttpClient.newBuilder().nioEventLoops(1).hedging(95, Duration.ofMillis(20)).build());
+    }
+}
@@ -0,0 +1,239 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+class PipeliningTest {
+    ScriptedServer server;
+    HttpClient client;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    void start(int depth, int maxConnections) {
+        client = spy(HttpClient.newBuilder().pipelining(depth).maxConnectionsPerRoute(maxConnections).build());
+        try {
+            doAnswer(invocation -> server.connect()).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static HttpRequest get(String path) throws URISyntaxException {
+        return HttpRequest.newBuilder(new URI("http://localhost" + path)).build();
+    }
+
+    static String path(String head) {
+        return head.substring(head.indexOf(' ') + 1, head.indexOf(" HTTP/1.1"));
+    }
+
+    List<CompletableFuture<HttpResponse<String>>> sendAll(String... paths) throws URISyntaxException {
+        List<CompletableFuture<HttpResponse<String>>> futures = new ArrayList<>();
+        for (String path : paths) {
+            futures.add(client.sendAsync(get(path), HttpResponse.BodyHandlers.ofString()));
+        }
+        return futures;
+    }
+
+    static void assertBodies(List<CompletableFuture<HttpResponse<String>>> futures, String... paths) throws Exception {
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(paths[i], futures.get(i).get(5, TimeUnit.SECONDS).body());
+        }
+    }
+
+    @Test
+    void requestsAreWrittenBackToBackAndMatchedInOrder() throws Exception {
+        server = new ScriptedServer((connection, in, out) -> {
+            List<String> heads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                heads.add(TestServer.readHead(in));
+            }
+            for (String head : heads) {
+                out.write(TestServer.response(path(head)));
+            }
+            out.flush();
+            return false;
+        });
+        start(4, 1);
+
+        List<CompletableFuture<HttpResponse<String>>> futures = sendAll("/0", "/1", "/2", "/3");
+
+        assertBodies(futures, "/0", "/1", "/2", "/3");
+        assertEquals(1, server.connections.size());
+        assertEquals(1, client.connectionPool.idleCount(get("/").route()));
+        assertEquals(0, client.pipelines.pipelineCount(get("/").route()));
+    }
+
+    @Test
+    void depthLimitSpreadsRequestsOverConnections() throws Exception {
+        CountDownLatch respond = new CountDownLatch(1);
+        server = new ScriptedServer((connection, in, out) -> {
+            int from = connection.size();
+            String head = TestServer.readHead(in);
+            if (head == null) {
+                return true;
+            }
+            connection.add(head);
+            while (!respond.await(5, TimeUnit.MILLISECONDS)) {
+                if (in.available() > 0) {
+                    connection.add(TestServer.readHead(in));
+                }
+            }
+            for (String pending : connection.subList(from, connection.size())) {
+                out.write(TestServer.response(path(pending)));
+            }
+            out.flush();
+            return false;
+        });
+        start(2, 2);
+
+        List<CompletableFuture<HttpResponse<String>>> futures = sendAll("/0", "/1", "/2");
+        server.awaitHeads(3);
+        assertEquals(2, client.pipelines.pipelineCount(get("/").route()));
+        respond.countDown();
+
+        assertBodies(futures, "/0", "/1", "/2");
+        assertEquals(2, server.connections.size());
+    }
+
+    @Test
+    void unansweredRequestsAreReplayedWhenConnectionBreaks() throws Exception {
+        server = new ScriptedServer((connection, in, out) -> {
+            String head = TestServer.readHead(in);
+            if (head == null) {
+                return true;
+            }
+            connection.add(head);
+            if (server.connections.size() == 1 && connection.size() == 3) {
+                out.write(TestServer.response(path(connection.get(0))));
+                out.flush();
+                return true;
+            }
+            if (server.connections.size() > 1) {
+                out.write(TestServer.response(path(head)));
+                out.flush();
+            }
+            return false;
+        });
+        start(3, 1);
+
+        List<CompletableFuture<HttpResponse<String>>> futures = sendAll("/0", "/1", "/2");
+
+        assertBodies(futures, "/0", "/1", "/2");
+        assertEquals(2, server.connections.size());
+        assertEquals(2, server.connections.get(1).size());
+    }
+
+    @Test
+    void closeResponseEndsPipeline() throws Exception {
+        server = new ScriptedServer((connection, in, out) -> {
+            String head = TestServer.readHead(in);
+            if (head == null) {
+                return true;
+            }
+            connection.add(head);
+            byte[] body = path(head).getBytes(StandardCharsets.UTF_8);
+            out.write(("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes());
+            out.write(body);
+            out.flush();
+            return true;
+        });
+        start(2, 1);
+
+        List<CompletableFuture<HttpResponse<String>>> futures = sendAll("/0", "/1");
+
+        assertBodies(futures, "/0", "/1");
+        assertEquals(0, client.connectionPool.idleCount(get("/").route()));
+    }
+
+    @Test
+    void onlyReplayableBodilessRequestsArePipelined() throws Exception {
+        client = HttpClient.newBuilder().pipelining(2).build();
+        HttpResponse.BodyHandler<String> handler = HttpResponse.BodyHandlers.ofString();
+        HttpRequest post = HttpRequest.newBuilder(new URI("http://localhost/"))
+                .POST(HttpRequest.BodyPublishers.ofString("body"))
+                .build();
+        HttpRequest close = HttpRequest.newBuilder(new URI("http://localhost/")).setHeader("Connection", "close").build();
+
+        assertTrue(Pipelines.isEligible(client, get("/"), handler));
+        assertFalse(Pipelines.isEligible(client, post, handler));
+        assertFalse(Pipelines.isEligible(client, close, handler));
+        assertFalse(Pipelines.isEligible(client, get("/"), HttpResponse.BodyHandlers.ofInputStream()));
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().pipelining(0));
+    }
+
+    interface Script {
+        boolean step(List<String> connection, InputStream in, OutputStream out) throws Exception;
+    }
+
+    static class ScriptedServer implements Closeable {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final List<List<String>> connections = new CopyOnWriteArrayList<>();
+        private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final Script script;
+
+        ScriptedServer(Script script) throws IOException {
+            this.script = script;
+            executor.execute(this::acceptLoop);
+        }
+
+        Socket connect() throws IOException {
+            return new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        }
+
+        void awaitHeads(int count) throws InterruptedException {
+            while (connections.stream().mapToInt(List::size).sum() < count) {
+                Thread.sleep(5);
+            }
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    sockets.add(socket);
+                    List<String> heads = new CopyOnWriteArrayList<>();
+                    connections.add(heads);
+                    executor.execute(() -> serve(socket, heads));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket, List<String> heads) {
+            try (socket;
+                 var in = new BufferedInputStream(socket.getInputStream());
+                 var out = socket.getOutputStream()) {
+                while (!script.step(heads, in, out)) {
+                }
+            } catch (Exception ignored) {
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.function.Function;
+
+class ResponseCacheTest {
+    TestServer server;
+    HttpClient client;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    static byte[] response(String headers, String body) {
+        String head = "HTTP/1.1 200 OK\r\n" + headers + "Content-Length: " + body.length() + "\r\n\r\n";
+        return (head + body).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    void start(Function<String, byte[]> responder, HttpClient.Builder builder) throws IOException {
+        server = new TestServer(responder);
+        client = spy(builder.build());
+        doAnswer(invocation -> server.connect()).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+    }
+
+    String get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost" + path)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    ResponseCache cache() {
+        return client.cache().orElseThrow();
+    }
+
+    @Test
+    void freshResponseIsServedFromMemory() throws Exception {
+        start(head -> response("Cache-Control: max-age=60\r\n", "cached body"), HttpClient.newBuilder().cache(1 << 20));
+
+        assertEquals("cached body", get("/a"));
+        assertEquals("cached body", get("/a"));
+
+        assertEquals(1, server.requests.get());
+        assertEquals(1, cache().hitCount());
+        assertEquals(1, cache().missCount());
+    }
+
+    @Test
+    void staleResponseIsRevalidatedWithEtag() throws Exception {
+        start(head -> head.contains("If-None-Match: \"v1\"")
+                        ? "HTTP/1.1 304\r\nCache-Control: max-age=60\r\n\r\n".getBytes()
+                        : response("Cache-Control: max-age=0\r\nETag: \"v1\"\r\n", "etag body"),
+                HttpClient.newBuilder().cache(1 << 20));
+
+        assertEquals("etag body", get("/a"));
+        assertEquals("etag body", get("/a"));
+        assertEquals("etag body", get("/a"));
+
+        assertEquals(2, server.requests.get());
+        assertTrue(server.requestHeads.get(1).contains("If-None-Match: \"v1\"\r\n"));
+        assertEquals(1, cache().revalidationCount());
+        assertEquals(1, cache().hitCount());
+    }
+
+    @Test
+    void notModifiedHeadersUpdateStoredEntry() throws Exception {
+        start(head -> head.contains("If-None-Match: \"v1\"")
+                        ? "HTTP/1.1 304\r\nDate: Thu, 22 Oct 2015 07:28:00 GMT\r\nCache-Control: max-age=60\r\n\r\n".getBytes()
+                        : response("Date: Wed, 21 Oct 2015 07:28:00 GMT\r\nCache-Control: max-age=0\r\nETag: \"v1\"\r\n",
+                                "etag body"),
+                HttpClient.newBuilder().cache(1 << 20));
+
+        get("/a");
+        get("/a");
+        assertRefreshedHeaders(send("/a"));
+
+        assertEquals(2, server.requests.get());
+        assertEquals(1, cache().hitCount());
+    }
+
+    @Test
+    void notModifiedHeadersUpdateDiskEntry(@TempDir Path directory) throws Exception {
+        String body = "z".repeat(400);
+        start(head -> head.contains("If-None-Match: \"v1\"")
+                        ? "HTTP/1.1 304\r\nDate: Thu, 22 Oct 2015 07:28:00 GMT\r\nCache-Control: max-age=60\r\n\r\n".getBytes()
+                        : head.startsWith("GET /a ")
+                        ? response("Date: Wed, 21 Oct 2015 07:28:00 GMT\r\nCache-Control: max-age=0\r\nETag: \"v1\"\r\n", body)
+                        : response("Cache-Control: max-age=60\r\n", body),
+                HttpClient.newBuilder().cache(1200, directory, 1 << 20));
+
+        get("/a");
+        get("/b");
+        get("/c");
+        assertEquals(body, get("/a"));
+        get("/b");
+        get("/c");
+        assertEquals(1, cache().diskCount());
+        HttpResponse<String> hit = send("/a");
+
+        assertRefreshedHeaders(hit);
+        assertEquals(body, hit.body());
+        assertEquals(4, server.requests.get());
+        assertEquals(3, cache().hitCount());
+    }
+
+    HttpResponse<String> send(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(new URI("http://localhost" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    static void assertRefreshedHeaders(HttpResponse<String> response) {
+        assertEquals(List.of("Thu, 22 Oct 2015 07:28:00 GMT"), response.headers().allValues("Date"));
+        assertEquals(List.of("max-age=60"), response.headers().allValues("Cache-Control"));
+        assertEquals("\"v1\"", response.headers().get(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void notModifiedWithReasonPhraseRevalidates() throws Exception {
+        start(head -> head.contains("If-None-Match: \"v1\"")
+                        ? "HTTP/1.1 304 Not Modified\r\nCache-Control: max-age=60\r\n\r\n".getBytes()
+                        : response("Cache-Control: max-age=0\r\nETag: \"v1\"\r\n", "etag body"),
+                HttpClient.newBuilder().cache(1 << 20));
+
+        assertEquals("etag body", get("/a"));
+        assertEquals("etag body", get("/a"));
+
+        assertEquals(2, server.requests.get());
+        assertEquals(1, cache().revalidationCount());
+    }
+
+    @Test
+    void staleResponseIsRevalidatedWithLastModified() throws Exception {
+        String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+        start(head -> head.contains("If-Modified-Since: " + lastModified)
+                        ? "HTTP/1.1 304\r\n\r\n".getBytes()
+                        : response("Last-Modified: " + lastModified + "\r\n", "dated body"),
+                HttpClient.newBuilder().cache(1 << 20));
+
+        assertEquals("dated body", get("/a"));
+        assertEquals("dated body", get("/a"));
+
+        assertEquals(1, cache().revalidationCount());
+        assertEquals(1, cache().missCount());
+    }
+
+    @Test
+    void changedResourceReplacesEntry() throws Exception {
+        int[] version = {1};
+        start(head -> response("Cache-Control: no-cache\r\nETag: \"v" + version[0] + "\"\r\n", "body " + version[0]),
+                HttpClient.newBuilder().cache(1 << 20));
+
+        assertEquals("body 1", get("/a"));
+        version[0] = 2;
+        assertEquals("body 2", get("/a"));
+        assertTrue(server.requestHeads.get(1).contains("If-None-Match: \"v1\""));
+        assertEquals("body 2", get("/a"));
+        assertTrue(server.requestHeads.get(2).contains("If-None-Match: \"v2\""));
+    }
+
+    @Test
+    void changedResourceIsStreamedThroughCallerHandler() throws Exception {
+        int[] version = {1};
+        start(head -> response("Cache-Control: no-cache\r\nETag: \"v" + version[0] + "\"\r\n", "body " + version[0]),
+                HttpClient.newBuilder().cache(1 << 20));
+        HttpRequest request = HttpRequest.newBuilder(new URI("http://localhost/a")).build();
+
+        assertEquals("body 1", get("/a"));
+        version[0] = 2;
+        try (InputStream body = client.send(request, HttpResponse.BodyHandlers.ofInputStream()).body()) {
+            assertEquals("body 2", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        assertTrue(server.requestHeads.get(1).contains("If-None-Match: \"v1\""));
+        assertEquals("body 2", get("/a"));
+        assertFalse(server.requestHeads.get(2).contains("If-None-Match"));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void oversizedReplacementIsNotStored() throws Exception {
+        int[] version = {1};
+        start(head -> response("Cache-Control: no-cache\r\nETag: \"v" + version[0] + "\"\r\n",
+                        version[0] == 1 ? "small" : "z".repeat(200)),
+                HttpClient.newBuilder().cache(100));
+
+        assertEquals("small", get("/a"));
+        version[0] = 2;
+        assertEquals("z".repeat(200), get("/a"));
+
+        assertEquals(0, cache().memoryCount());
+        get("/a");
+        assertFalse(server.requestHeads.get(2).contains("If-None-Match"));
+    }
+
+    @Test
+    void noStoreIsNotCached() throws Exception {
+        start(head -> response("Cache-Control: no-store, max-age=60\r\n", "secret"), HttpClient.newBuilder().cache(1 << 20));
+
+        get("/a");
+        get("/a");
+
+        assertEquals(2, server.requests.get());
+        assertEquals(0, cache().hitCount());
+    }
+
+    @Test
+    void expiredResponseWithoutValidatorsIsRefetched() throws Exception {
+        start(head -> response("Date: Wed, 21 Oct 2015 07:28:00 GMT\r\nExpires: Wed, 21 Oct 2015 07:28:00 GMT\r\n", "old"),
+                HttpClient.newBuilder().cache(1 << 20));
+
+        get("/a");
+        get("/a");
+
+        assertEquals(2, server.requests.get());
+        assertEquals(2, cache().missCount());
+    }
+
+    @Test
+    void unsafeRequestInvalidatesEntry() throws Exception {
+        start(head -> response("Cache-Control: max-age=60\r\n", "body"), HttpClient.newBuilder().cache(1 << 20));
+        get("/a");
+
+        HttpRequest post = HttpRequest.newBuilder(new URI("http://localhost/a"))
+                .POST(HttpRequest.BodyPublishers.ofString("update"))
+                .build();
+        client.send(post, HttpResponse.BodyHandlers.ofString());
+        get("/a");
+
+        assertEquals(3, server.requests.get());
+        assertEquals(0, cache().hitCount());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        String body = "x".repeat(400);
+        start(head -> response("Cache-Control: max-age=60\r\n", body), HttpClient.newBuilder().cache(1200));
+
+        get("/a");
+        get("/b");
+        get("/a");
+        get("/c");
+
+        assertEquals(2, cache().memoryCount());
+        get("/a");
+        assertEquals(3, server.requests.get());
+        get("/b");
+        assertEquals(4, server.requests.get());
+    }
+
+    @Test
+    void evictedEntrySpillsToDisk(@TempDir Path directory) throws Exception {
+        String body = "y".repeat(400);
+        start(head -> response("Cache-Control: max-age=60\r\n", body),
+                HttpClient.newBuilder().cache(1200, directory, 1 << 20));
+
+        get("/a");
+        get("/b");
+        get("/c");
+        assertEquals(1, cache().diskCount());
+
+        assertEquals(body, get("/a"));
+        assertEquals(3, server.requests.get());
+        assertEquals(1, cache().hitCount());
+        assertEquals(1, cache().diskCount());
+    }
+
+    @Test
+    void oldestSegmentIsDropped(@TempDir Path directory) throws Exception {
+        try (ResponseCache.SegmentStore store = new ResponseCache.SegmentStore(directory, 150, 100)) {
+            for (String key : new String[] {"a", "b", "c"}) {
+                byte[] message = key.repeat(60).getBytes();
+                store.put(new ResponseCache.Entry(key, message, message.length, null, null));
+            }
+
+            assertEquals(2, store.count());
+            assertNull(store.take("a"));
+            assertArrayEquals("c".repeat(60).getBytes(), store.take("c").message);
+            assertEquals(2, Files.list(directory).count());
+        }
+
+        assertEquals(0, Files.list(directory).count());
+    }
+
+    @Test
+    void diskBudgetIsNeverExceeded(@TempDir Path directory) throws Exception {
+        try (ResponseCache.SegmentStore store = new ResponseCache.SegmentStore(directory, 100, 1000)) {
+            for (String key : new String[] {"a", "b", "c"}) {
+                byte[] message = key.repeat(60).getBytes();
+                store.put(new ResponseCache.Entry(key, message, message.length, null, null));
+
+                long used = 0;
+                try (var files = Files.list(directory)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        used += Files.size(file);
+                    }
+                }
+                assertTrue(used <= 100, "used " + used + " bytes");
+            }
+
+            assertEquals(1, store.count());
+            assertArrayEquals("c".repeat(60).getBytes(), store.take("c").message);
+        }
+    }
+
+    @Test
+    void freshnessLifetime() throws IOException {
+        assertEquals(60_000, lifetime("Cache-Control: public, max-age=60\r\n"));
+        assertEquals(50_000, lifetime("Cache-Control: max-age=60\r\nAge: 10\r\n"));
+        assertEquals(0, lifetime("Cache-Control: no-cache, max-age=60\r\n"));
+        assertEquals(3_600_000, lifetime("Date: Wed, 21 Oct 2015 07:28:00 GMT\r\nExpires: Wed, 21 Oct 2015 08:28:00 GMT\r\n"));
+        assertEquals(0, lifetime("Expires: 0\r\n"));
+        assertEquals(-1, lifetime("ETag: \"v1\"\r\n"));
+    }
+
+    static long lifetime(String headers) throws IOException {
+        HttpInput input = new HttpInput(ByteBuffer.wrap(("HTTP/1.1 200 OK\r\n" + headers + "\r\n").getBytes()), null);
+        return ResponseCache.freshnessLifetime(new HttpResponse<>(input).headers(), 0);
+    }
+}
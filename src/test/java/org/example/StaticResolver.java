@@ -0,0 +1,35 @@
+package org.example;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class StaticResolver implements Resolver {
+    final AtomicInteger lookups = new AtomicInteger();
+    private final Map<String, InetAddress[]> hosts = new ConcurrentHashMap<>();
+
+    StaticResolver map(String host, String... addresses) throws UnknownHostException {
+        InetAddress[] resolved = new InetAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            resolved[i] = InetAddress.getByAddress(host, InetAddress.getByName(addresses[i]).getAddress());
+        }
+        hosts.put(host, resolved);
+        return this;
+    }
+
+    void unmap(String host) {
+        hosts.remove(host);
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        lookups.incrementAndGet();
+        InetAddress[] addresses = hosts.get(host);
+        if (addresses == null) {
+            throw new UnknownHostException(host);
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,225 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.*;
+
+class StreamingBodyTest {
+    TestServer server;
+    HttpClient client;
+    HttpRequest request;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    void start(Function<String, byte[]> responder) throws Exception {
+        server = new TestServer(responder);
+        client = spy(HttpClient.newBuilder().build());
+        doAnswer(invocation -> server.connect()).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+        request = HttpRequest.newBuilder(new URI("http://localhost/stream")).build();
+    }
+
+    static byte[] chunked(String... chunks) {
+        StringBuilder response = new StringBuilder("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+        for (String chunk : chunks) {
+            response.append(Integer.toHexString(chunk.length())).append("\r\n").append(chunk).append("\r\n");
+        }
+        return response.append("0\r\n\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void inputStreamReleasesConnectionAtEnd() throws Exception {
+        start(head -> TestServer.response("streamed body"));
+
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(0, client.connectionPool.idleCount(request.route()));
+        try (InputStream body = response.body()) {
+            assertEquals("streamed body", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(1, client.connectionPool.idleCount(request.route()));
+
+        client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void closedInputStreamDiscardsConnection() throws Exception {
+        String body = "x".repeat(1 << 20);
+        start(head -> TestServer.response(body));
+
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream in = response.body()) {
+            assertEquals('x', in.read());
+        }
+        assertEquals(0, client.connectionPool.idleCount(request.route()));
+
+        assertEquals(body, client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    void linesAreReadLazily() throws Exception {
+        start(head -> chunked("first\nsec", "ond\n", "third"));
+
+        HttpResponse<Stream<String>> response = client.send(request, HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = response.body()) {
+            assertEquals(List.of("first", "second", "third"), lines.collect(Collectors.toList()));
+        }
+        assertEquals(1, client.connectionPool.idleCount(request.route()));
+    }
+
+    @Test
+    void subscriberReceivesBodyOnDemand() throws Exception {
+        String body = "y".repeat(100_000);
+        start(head -> TestServer.response(body));
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+
+        client.send(request, HttpResponse.BodyHandlers.fromSubscriber(subscriber));
+
+        assertTrue(subscriber.completed);
+        assertEquals(body, subscriber.body());
+        assertTrue(subscriber.deliveries > 1);
+        assertEquals(subscriber.requested, subscriber.deliveries + 1);
+        assertEquals(1, client.connectionPool.idleCount(request.route()));
+    }
+
+    @Test
+    void deliveryWaitsForDemand() throws Exception {
+        start(head -> TestServer.response("delayed"));
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+
+        CompletableFuture<HttpResponse<Void>> future =
+                client.sendAsync(request, HttpResponse.BodyHandlers.fromSubscriber(subscriber));
+        Flow.Subscription subscription = subscriber.subscription.get(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+        assertFalse(future.isDone());
+        assertEquals(0, subscriber.deliveries);
+
+        subscription.request(Long.MAX_VALUE);
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals("delayed", subscriber.body());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    void cancelledSubscriptionDiscardsConnection() throws Exception {
+        start(head -> TestServer.response("z".repeat(1 << 20)));
+        RecordingSubscriber subscriber = new RecordingSubscriber(1) {
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                super.onNext(item);
+                subscription.join().cancel();
+            }
+        };
+
+        client.send(request, HttpResponse.BodyHandlers.fromSubscriber(subscriber));
+
+        assertEquals(1, subscriber.deliveries);
+        assertFalse(subscriber.completed);
+        assertEquals(0, client.connectionPool.idleCount(request.route()));
+    }
+
+    @Test
+    void nonPositiveRequestSignalsError() throws Exception {
+        start(head -> TestServer.response("body"));
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+
+        CompletableFuture<HttpResponse<Void>> future =
+                client.sendAsync(request, HttpResponse.BodyHandlers.fromSubscriber(subscriber));
+        subscriber.subscription.get(5, TimeUnit.SECONDS).request(0);
+        future.get(5, TimeUnit.SECONDS);
+
+        assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    void streamingBypassesCacheStore() throws Exception {
+        server = new TestServer(head -> TestServer.concat(
+                "HTTP/1.1 200 OK\r\nCache-Control: max-age=60\r\nContent-Length: 6\r\n\r\n".getBytes(),
+                "cached".getBytes()));
+        client = spy(HttpClient.newBuilder().cache(1 << 20).build());
+        doAnswer(invocation -> server.connect()).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+        request = HttpRequest.newBuilder(new URI("http://localhost/stream")).build();
+
+        try (InputStream in = client.send(request, HttpResponse.BodyHandlers.ofInputStream()).body()) {
+            assertEquals("cached", new String(in.readAllBytes()));
+        }
+        assertEquals("cached", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        try (InputStream in = client.send(request, HttpResponse.BodyHandlers.ofInputStream()).body()) {
+            assertEquals("cached", new String(in.readAllBytes()));
+        }
+
+        assertEquals(2, server.requests.get());
+        assertEquals(1, client.cache().orElseThrow().hitCount());
+    }
+
+    static class RecordingSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final long step;
+        volatile long requested;
+        volatile int deliveries;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        RecordingSubscriber(long step) {
+            this.step = step;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription.complete(subscription);
+            request();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            deliveries++;
+            for (ByteBuffer buffer : item) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                received.writeBytes(bytes);
+            }
+            request();
+        }
+
+        private void request() {
+            if (step > 0) {
+                requested += step;
+                subscription.join().request(step);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        String body() {
+            return received.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.example;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.net.ssl.*;
+
+class TestServer implements Closeable {
+    private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+    final ServerSocket serverSocket;
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger requests = new AtomicInteger();
+    final List<String> requestHeads = new CopyOnWriteArrayList<>();
+    final List<byte[]> requestBodies = new CopyOnWriteArrayList<>();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final Function<String, byte[]> responder;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "test-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    TestServer(Function<String, byte[]> responder) throws IOException {
+        this(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()), responder);
+    }
+
+    TestServer(ServerSocket serverSocket, Function<String, byte[]> responder) {
+        this.responder = responder;
+        this.serverSocket = serverSocket;
+        executor.execute(this::acceptLoop);
+    }
+
+    static TestServer secure(SSLContext context, Function<String, byte[]> responder) throws IOException {
+        return new TestServer(context.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress()),
+                responder);
+    }
+
+    static SSLContext sslContext() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = TestServer.class.getResourceAsStream("/localhost.p12")) {
+            keyStore.load(in, KEYSTORE_PASSWORD);
+        }
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    static TestServer withBody(String body) throws IOException {
+        return new TestServer(requestHead -> response(body));
+    }
+
+    static byte[] response(String body) {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + bodyBytes.length + "\r\n\r\n";
+        return concat(head.getBytes(StandardCharsets.ISO_8859_1), bodyBytes);
+    }
+
+    static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    Socket connect() throws IOException {
+        return new Socket(serverSocket.getInetAddress(), port());
+    }
+
+    Socket connectChannel() throws IOException {
+        return SocketChannel.open(new InetSocketAddress(serverSocket.getInetAddress(), port())).socket();
+    }
+
+    void awaitConnections(int count) throws InterruptedException {
+        while (connections.get() < count || sockets.size() < count) {
+            Thread.sleep(5);
+        }
+    }
+
+    void dropConnections() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                sockets.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             var in = new BufferedInputStream(socket.getInputStream());
+             var out = socket.getOutputStream()) {
+            for (String head = readHead(in); head != null; head = readHead(in)) {
+                requests.incrementAndGet();
+                requestHeads.add(head);
+                requestBodies.add(readBody(in, head));
+                out.write(responder.apply(head));
+                out.flush();
+                if (head.contains("Connection: close")) {
+                    return;
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        for (String line = readLine(in); line != null; line = readLine(in)) {
+            if (line.isEmpty()) {
+                return head.toString();
+            }
+            head.append(line).append("\r\n");
+        }
+        return null;
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+
+        String lineStr = line.toString(StandardCharsets.ISO_8859_1);
+        return lineStr.endsWith("\r") ? lineStr.substring(0, lineStr.length() - 1) : lineStr;
+    }
+
+    private byte[] readBody(InputStream in, String head) throws IOException {
+        if (head.contains("Transfer-Encoding: chunked\r\n")) {
+            return readChunkedBody(in);
+        }
+
+        for (String line : head.split("\r\n")) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                return in.readNBytes(Integer.parseInt(line.substring(15).trim()));
+            }
+        }
+        return new byte[0];
+    }
+
+    private byte[] readChunkedBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int size = Integer.parseInt(readLine(in), 16); size > 0; size = Integer.parseInt(readLine(in), 16)) {
+            body.write(in.readNBytes(size));
+            readLine(in);
+        }
+        readLine(in);
+        return body.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+        executor.shutdownNow();
+    }
+}
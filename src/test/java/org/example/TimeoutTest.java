@@ -0,0 +1,186 @@
+package org.example;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.net.*;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class TimeoutTest {
+    TestServer server;
+    HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        AtomicBoolean stall = new AtomicBoolean(true);
+        server = new TestServer(head -> {
+            if (head.contains("X-Stall-Once") && stall.compareAndSet(true, false)) {
+                head = head + "X-Delay: 5000\r\n";
+            }
+            if (head.contains("X-Delay: ")) {
+                String delay = head.substring(head.indexOf("X-Delay: ") + 9, head.indexOf("\r\n", head.indexOf("X-Delay: ")));
+                try {
+                    Thread.sleep(Long.parseLong(delay));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return TestServer.response("done");
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+    }
+
+    HttpRequest.Builder request(long delayMillis) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + "/"));
+        return delayMillis > 0 ? builder.header("X-Delay", Long.toString(delayMillis)) : builder;
+    }
+
+    @Test
+    void timerWheelRunsAndCancelsTasks() throws Exception {
+        try (TimerWheel timers = new TimerWheel(TimeUnit.MILLISECONDS.toNanos(1), 8)) {
+            CountDownLatch fired = new CountDownLatch(1);
+            long start = System.nanoTime();
+            TimerWheel.Timeout timeout = timers.schedule(TimeUnit.MILLISECONDS.toNanos(20), fired::countDown);
+            TimerWheel.Timeout cancelled = timers.schedule(TimeUnit.MILLISECONDS.toNanos(10), () -> fail("cancelled"));
+
+            assertTrue(cancelled.cancel());
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+            assertTrue(timeout.isExpired());
+            assertFalse(timeout.cancel());
+            Thread.sleep(20);
+            assertEquals(0, timers.pending());
+        }
+    }
+
+    @Test
+    void readTimeoutFailsStalledResponse() throws Exception {
+        client = HttpClient.newBuilder().readTimeout(Duration.ofMillis(100)).build();
+
+        long start = System.nanoTime();
+        HttpTimeoutException e = assertThrows(HttpTimeoutException.class,
+                () -> client.send(request(2000).build(), HttpResponse.BodyHandlers.ofString()));
+
+        assertTrue(e.getMessage().startsWith("Read timed out"), e.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals("done", client.send(request(0).build(), HttpResponse.BodyHandlers.ofString()).body());
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    void requestTimeoutOverridesClientDefault() throws Exception {
+        client = HttpClient.newBuilder().requestTimeout(Duration.ofSeconds(30)).build();
+        HttpRequest request = request(2000).timeout(Duration.ofMillis(100)).build();
+
+        long start = System.nanoTime();
+        HttpTimeoutException e = assertThrows(HttpTimeoutException.class,
+                () -> client.send(request, HttpResponse.BodyHandlers.ofString()));
+
+        assertTrue(e.getMessage().startsWith("Request timed out"), e.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, client.connectionPool.idleCount(request.route()));
+        assertEquals("done", client.send(request(0).build(), HttpResponse.BodyHandlers.ofString()).body());
+    }
+
+    @Test
+    void requestTimeoutCompletesNonBlockingFuture() {
+        client = HttpClient.newBuilder().nioEventLoops(1).requestTimeout(Duration.ofMillis(100)).build();
+
+        CompletableFuture<HttpResponse<String>> future = client.sendAsync(request(2000).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+    }
+
+    @Test
+    void readTimeoutFailsStalledNonBlockingResponse() throws Exception {
+        client = HttpClient.newBuilder().nioEventLoops(1).readTimeout(Duration.ofMillis(100)).build();
+
+        long start = System.nanoTime();
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.sendAsync(request(2000).build(), HttpResponse.BodyHandlers.ofString()).get(5, TimeUnit.SECONDS));
+
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        assertTrue(e.getCause().getMessage().startsWith("Read timed out"), e.getCause().getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals("done", client.sendAsync(request(0).build(), HttpResponse.BodyHandlers.ofString())
+                .get(5, TimeUnit.SECONDS).body());
+    }
+
+    @Test
+    void requestReadTimeoutAppliesToNonBlockingExchange() throws Exception {
+        client = HttpClient.newBuilder().nioEventLoops(1).build();
+        HttpRequest request = request(2000).readTimeout(Duration.ofMillis(100)).build();
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        assertEquals("done", client.sendAsync(request(200).readTimeout(Duration.ofSeconds(5)).build(),
+                HttpResponse.BodyHandlers.ofString()).get(5, TimeUnit.SECONDS).body());
+    }
+
+    @Test
+    void connectTimeoutIsCappedByRemainingDeadline() throws Exception {
+        client = spy(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build());
+        doAnswer(invocation -> server.connect()).when(client).getSocket(anyString(), anyInt(), anyInt(), any());
+
+        client.send(request(0).setHeader("Connection", "close").build(), HttpResponse.BodyHandlers.ofString());
+        client.send(request(0).timeout(Duration.ofSeconds(2)).build(), HttpResponse.BodyHandlers.ofString());
+
+        verify(client).getSocket(anyString(), anyInt(), eq(10_000), any());
+        verify(client).getSocket(anyString(), anyInt(), intThat(millis -> millis > 1000 && millis <= 2000), any());
+    }
+
+    @Test
+    void invalidTimeoutsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().connectTimeout(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().readTimeout(Duration.ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> HttpClient.newBuilder().hedging(100, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> request(0).timeout(Duration.ZERO));
+    }
+
+    @Test
+    void hedgedRequestWinsOverStalledPrimary() throws Exception {
+        client = HttpClient.newBuilder().hedging(95, Duration.ofMillis(20)).build();
+        HttpRequest request = request(0).header("X-Stall-Once", "true").build();
+        for (int i = 0; i < Hedging.MIN_SAMPLES; i++) {
+            client.send(request(0).build(), HttpResponse.BodyHandlers.ofString());
+        }
+        assertEquals(0, client.hedging.hedged.sum());
+
+        long start = System.nanoTime();
+        assertEquals("done", client.send(request, HttpResponse.BodyHandlers.ofString()).body());
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, client.hedging.hedged.sum());
+        assertEquals(1, client.hedging.hedgeWins.sum());
+        assertEquals(Hedging.MIN_SAMPLES + 2, server.requests.get());
+    }
+
+    @Test
+    void nonIdempotentRequestsAreNotHedged() throws Exception {
+        client = HttpClient.newBuilder().hedging(50, Duration.ZERO).build();
+        for (int i = 0; i < Hedging.MIN_SAMPLES; i++) {
+            client.send(request(0).build(), HttpResponse.BodyHandlers.ofString());
+        }
+
+        HttpRequest post = request(200).POST(HttpRequest.BodyPublishers.ofString("once")).build();
+        assertEquals("done", client.send(post, HttpResponse.BodyHandlers.ofString()).body());
+
+        assertEquals(0, client.hedging.hedged.sum());
+        assertEquals(Hedging.MIN_SAMPLES + 1, server.requests.get());
+    }
+}